@@ -0,0 +1,65 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.util.Random;
+
+/**
+ * Measures the throughput of the range coder. A skewed stream of events, each an 8 bit symbol where one symbol makes up
+ * most of the stream, is coded and decoded with a bit tree model, and the speed is reported in MB of symbols per second
+ * along with the size of the coded output.
+ * <p>
+ * Run with an optional argument giving the number of symbols, which defaults to 16M.
+ *
+ * @author AireL
+ */
+public class RangeCoderBenchmark
+{
+	private static final int SYMBOL_BITS = 8;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args)
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 24;
+		int[] symbols = new int[count];
+		Random random = new Random(42);
+		for (int i = 0; i < count; i++)
+		{
+			symbols[i] = random.nextInt(10) < 9 ? 0 : random.nextInt(1 << SYMBOL_BITS);
+		}
+		BitStream coded = null;
+		int[] decoded = new int[count];
+		for (int round = 0; round < ROUNDS; round++)
+		{
+			long start = System.nanoTime();
+			BitStreamWriter out = new BitStreamWriter(count, true);
+			RangeEncoder encoder = new RangeEncoder(out);
+			short[] model = RangeEncoder.newModel(1 << SYMBOL_BITS);
+			for (int i = 0; i < count; i++)
+			{
+				encoder.encodeBitTree(model, SYMBOL_BITS, symbols[i]);
+			}
+			encoder.finish();
+			coded = out.toBitStream();
+			long encoded = System.nanoTime();
+			RangeDecoder decoder = new RangeDecoder(new BitStreamReader(coded));
+			model = RangeEncoder.newModel(1 << SYMBOL_BITS);
+			for (int i = 0; i < count; i++)
+			{
+				decoded[i] = decoder.decodeBitTree(model, SYMBOL_BITS);
+			}
+			long finished = System.nanoTime();
+			System.out.printf("round %d: encode %.1f MB/s, decode %.1f MB/s%n", round, megabytesPerSecond(count, encoded - start),
+					megabytesPerSecond(count, finished - encoded));
+		}
+		for (int i = 0; i < count; i++)
+		{
+			if (decoded[i] != symbols[i]) throw new IllegalStateException("Error, symbol " + i + " did not decode to its input");
+		}
+		System.out.printf("%d symbols coded in %d bytes, %.3f bits per symbol%n", count, (coded.getDataSize() + 7) / 8,
+				coded.getDataSize() / (double) count);
+	}
+
+	private static double megabytesPerSecond(int bytes, long nanos)
+	{
+		return bytes / (nanos / 1e9) / (1 << 20);
+	}
+}
@@ -0,0 +1,69 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * On-heap storage held in an AtomicLongArray, for streams written from several threads at once. Words are read and
+ * written with volatile semantics, and {@link #mergeWord(int, long, long)} updates part of a word without losing writes
+ * other threads make to the rest of it.
+ *
+ * @author AireL
+ */
+class AtomicLongArrayBitStorage extends BitStorage
+{
+	private final AtomicLongArray words;
+
+	/**
+	 * Creates storage of a number of words, cleared to 0
+	 * @param wordCount	The number of words
+	 */
+	AtomicLongArrayBitStorage(int wordCount)
+	{
+		this.words = new AtomicLongArray(wordCount);
+	}
+
+	@Override
+	public long getWord(int index)
+	{
+		return this.words.get(index);
+	}
+
+	@Override
+	public void setWord(int index, long word)
+	{
+		this.words.set(index, word);
+	}
+
+	@Override
+	public int getWordCount()
+	{
+		return this.words.length();
+	}
+
+	@Override
+	public BitStorage copyOf(int wordCount)
+	{
+		long[] copy = new long[wordCount];
+		for (int i = 0, n = Math.min(wordCount, this.words.length()); i < n; i++)
+		{
+			copy[i] = this.words.get(i);
+		}
+		return new LongArrayBitStorage(copy);
+	}
+
+	/**
+	 * Sets some bits of a word atomically, retrying if another thread changes the word in the meantime
+	 * @param index	The index of the word
+	 * @param mask	The bits of the word to set
+	 * @param bits	The new bits, in place in the word
+	 */
+	void mergeWord(int index, long mask, long bits)
+	{
+		long current;
+		do
+		{
+			current = this.words.get(index);
+		}
+		while (!this.words.compareAndSet(index, current, (current & ~mask) | (bits & mask)));
+	}
+}
@@ -0,0 +1,206 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The backing store of a BitStream. Storage is addressed in 64 bit words, where word i holds bits 64i to 64i + 63 of the
+ * stream with the first of them in the most significant bit.
+ * <p>
+ * Storage can live on the heap ({@link #allocate(int)}) or outside it ({@link #allocateDirect(int)}), or be compressed
+ * for sparse streams ({@link #allocateSparse(int)}). Readers and writers behave the same on each. Off-heap storage should
+ * be released with {@link #release()} once it is no longer needed.
+ *
+ * @author AireL
+ */
+public abstract class BitStorage
+{
+	private static final int WORD_LENGTH = 64;
+	private static final int WORD_BYTES = 8;
+	private static final int BYTE_LENGTH = 8;
+	private static final int MAX_BYTE = 0xFF;
+	
+	/**
+	 * Number of words encoded at a time when transferring storage that is not held as bytes
+	 */
+	private static final int TRANSFER_WORDS = 1024;
+
+	/**
+	 * Allocates new storage on the heap
+	 * @param bits	The number of bits the storage must hold
+	 * @return	The storage, cleared to 0
+	 */
+	public static BitStorage allocate(int bits)
+	{
+		return new LongArrayBitStorage(new long[(bits + WORD_LENGTH - 1) / WORD_LENGTH]);
+	}
+
+	/**
+	 * Allocates new storage outside the heap, in a direct ByteBuffer
+	 * @param bits	The number of bits the storage must hold
+	 * @return	The storage, cleared to 0
+	 */
+	public static BitStorage allocateDirect(int bits)
+	{
+		return ByteBufferBitStorage.allocateDirectBytes(((long) bits + WORD_LENGTH - 1) / WORD_LENGTH * WORD_BYTES);
+	}
+
+	/**
+	 * Allocates new compressed storage on the heap, for streams that are mostly 0s or long runs. Parts of the stream
+	 * that are all 0s take no space.
+	 * @param bits	The number of bits the storage must hold
+	 * @return	The storage, cleared to 0
+	 */
+	public static BitStorage allocateSparse(int bits)
+	{
+		return new SparseBitStorage((bits + WORD_LENGTH - 1) / WORD_LENGTH);
+	}
+
+	/**
+	 * Gets a word from the storage
+	 * @param index	The index of the word
+	 * @return	The word. Bits past the end of a final partial word read as 0
+	 */
+	public abstract long getWord(int index);
+
+	/**
+	 * Sets a word in the storage
+	 * @param index	The index of the word
+	 * @param word	The word to set. Bits past the end of a final partial word are dropped
+	 */
+	public abstract void setWord(int index, long word);
+
+	/**
+	 * Returns the number of words the storage holds, counting a final partial word as a whole one
+	 * @return
+	 */
+	public abstract int getWordCount();
+
+	/**
+	 * Copies the storage into new storage of the same kind
+	 * @param wordCount	The number of words the copy should hold. Words past the end of this storage are 0
+	 * @return	The copy
+	 */
+	public abstract BitStorage copyOf(int wordCount);
+
+	/**
+	 * Finds the next set bit in the storage. Storage that knows where its set bits are skips straight to them; other
+	 * storage scans a word at a time.
+	 * @param bitIndex	The position to search from
+	 * @param bitLimit	The position to search up to, exclusive, no further than the end of the storage
+	 * @return	The position of the set bit, or -1 if there is none before the limit
+	 */
+	public int nextSetBit(int bitIndex, int bitLimit)
+	{
+		if (bitIndex >= bitLimit) return -1;
+		int index = bitIndex >>> 6;
+		int last = (bitLimit - 1) >>> 6;
+		long word = this.getWord(index) & (-1L >>> (bitIndex & (WORD_LENGTH - 1)));
+		while (word == 0L)
+		{
+			if (++index > last) return -1;
+			word = this.getWord(index);
+		}
+		int pos = index * WORD_LENGTH + Long.numberOfLeadingZeros(word);
+		return pos < bitLimit ? pos : -1;
+	}
+
+	/**
+	 * Copies whole bytes out of the storage, most significant bit first. Storage held as bytes copies them in bulk; other
+	 * storage unpacks a word at a time.
+	 * @param bytePos	The byte position in the storage to copy from
+	 * @param dest		The array to copy into
+	 * @param offset	The offset in the array to copy to
+	 * @param length	The number of bytes to copy
+	 */
+	public void getBytes(int bytePos, byte[] dest, int offset, int length)
+	{
+		int end = offset + length;
+		int index = bytePos / WORD_BYTES;
+		int skip = bytePos % WORD_BYTES;
+		while (offset < end)
+		{
+			long word = this.getWord(index++) << (skip * BYTE_LENGTH);
+			for (int n = Math.min(WORD_BYTES - skip, end - offset); n > 0; n--)
+			{
+				dest[offset++] = (byte) (word >>> (WORD_LENGTH - BYTE_LENGTH));
+				word <<= BYTE_LENGTH;
+			}
+			skip = 0;
+		}
+	}
+
+	/**
+	 * Copies whole bytes into the storage, most significant bit first. Storage held as bytes copies them in bulk; other
+	 * storage packs a word at a time, merging only the words at either end.
+	 * @param bytePos	The byte position in the storage to copy to
+	 * @param src		The array to copy from
+	 * @param offset	The offset in the array to copy from
+	 * @param length	The number of bytes to copy
+	 */
+	public void setBytes(int bytePos, byte[] src, int offset, int length)
+	{
+		int end = offset + length;
+		int index = bytePos / WORD_BYTES;
+		int skip = bytePos % WORD_BYTES;
+		while (offset < end)
+		{
+			int n = Math.min(WORD_BYTES - skip, end - offset);
+			long word = 0L;
+			for (int i = 0; i < n; i++)
+			{
+				word = (word << BYTE_LENGTH) | (src[offset++] & MAX_BYTE);
+			}
+			if (n == WORD_BYTES)
+			{
+				this.setWord(index, word);
+			}
+			else
+			{
+				int shift = (WORD_BYTES - skip - n) * BYTE_LENGTH;
+				long mask = (-1L >>> (WORD_LENGTH - n * BYTE_LENGTH)) << shift;
+				this.setWord(index, (this.getWord(index) & ~mask) | (word << shift));
+			}
+			index++;
+			skip = 0;
+		}
+	}
+
+	/**
+	 * Writes the first bytes of the storage to a channel, most significant bit first. Storage held as bytes is written
+	 * straight from its buffer.
+	 * @param channel		The channel to write to
+	 * @param byteLength	The number of bytes to write
+	 * @throws IOException
+	 */
+	public void transferTo(WritableByteChannel channel, int byteLength) throws IOException
+	{
+		ByteBuffer chunk = ByteBuffer.allocate(TRANSFER_WORDS * WORD_BYTES);
+		int index = 0;
+		while (byteLength > 0)
+		{
+			chunk.clear();
+			int words = Math.min(TRANSFER_WORDS, (byteLength + WORD_BYTES - 1) / WORD_BYTES);
+			for (int i = 0; i < words; i++)
+			{
+				chunk.putLong(this.getWord(index++));
+			}
+			chunk.flip();
+			chunk.limit(Math.min(chunk.limit(), byteLength));
+			byteLength -= chunk.limit();
+			while (chunk.hasRemaining())
+			{
+				channel.write(chunk);
+			}
+		}
+	}
+
+	/**
+	 * Releases the storage. Off-heap storage frees its memory straight away, and must not be used afterwards. On-heap
+	 * storage is left to the garbage collector, so this does nothing.
+	 */
+	public void release()
+	{
+	}
+}
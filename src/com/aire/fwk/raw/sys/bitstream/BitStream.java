@@ -1,11 +1,29 @@
 package com.aire.fwk.raw.sys.bitstream;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.zip.CRC32;
 
 /**
  * A bit stream class. The class stores a series of bits in a highly storage-optimised form, and can be manipulated by the readers and
  * writers.
+ * <p>
+ * Bits are held in a {@link BitStorage}, packed 64 to a word with the first bit of the stream in the most significant bit of the
+ * first word. This lets any field of up to 64 bits be pulled out of at most two words with a shift and a mask. Streams can be
+ * built over BitSets, or can wrap byte arrays and ByteBuffers in place with {@link #wrap(byte[], int, int)} and
+ * {@link #wrap(ByteBuffer, int)}. Large streams can be held outside the heap with {@link #allocateDirect(int)}, and should then be
+ * released with {@link #release()} once finished with.
  * @author AireL
  */
 public class BitStream implements Serializable
@@ -13,11 +31,40 @@ public class BitStream implements Serializable
 	/**
 	 * Generated serial id
 	 */
-	private static final long serialVersionUID = 5071687193767514809L;
+	private static final long serialVersionUID = -3379032411652738143L;
 
-	protected BitSet coreData;
-	
-	protected final int dataSize;
+	/**
+	 * Number of bits held in a single storage word
+	 */
+	protected static final int WORD_LENGTH = 64;
+
+	/**
+	 * Byte length as a static int
+	 */
+	private static final int BYTE_LENGTH = 8;
+	private static final int MAX_BYTE = 0xFF;
+
+	/**
+	 * The binary format: a header of the magic number, the format version, the flags and the data size in bits, then the
+	 * packed bytes of the stream, then a CRC32 of those bytes if the checksum flag is set
+	 */
+	private static final int MAGIC = 0x42695453;
+	private static final int FORMAT_VERSION = 1;
+	private static final int FLAG_CHECKSUM = 1;
+	private static final int HEADER_BYTES = 10;
+	private static final int CHECKSUM_BYTES = 4;
+
+	/**
+	 * Number of bytes copied at a time when writing or reading the binary format. A whole number of words.
+	 */
+	private static final int CHUNK_BYTES = 8192;
+
+	/**
+	 * The packed stream data, most significant bit first. Written out by hand when serialising.
+	 */
+	protected transient BitStorage storage;
+
+	protected int dataSize;
 
 	/**
 	 * Generates a new final bit stream from the data provided
@@ -26,19 +73,311 @@ public class BitStream implements Serializable
 	 */
 	public BitStream(BitSet data, int dataSize)
 	{
-		this.coreData = data;
+		this(new LongArrayBitStorage(toWords(data, dataSize)), dataSize);
+	}
+
+	/**
+	 * Generates a new bit stream over existing storage. The storage is shared, not copied.
+	 * @param storage	The packed data
+	 * @param dataSize	The length of the data
+	 */
+	public BitStream(BitStorage storage, int dataSize)
+	{
+		this.storage = storage;
 		this.dataSize = dataSize;
 	}
-	
+
+	/**
+	 * Wraps a byte array as a BitStream without copying it. The first bit of the stream is the most significant bit of
+	 * the byte at the offset. Changes to the array are seen by the stream, and writes to the stream change the array.
+	 * @param data		The array to wrap
+	 * @param offset	The offset of the first byte of the stream
+	 * @param bitLength	The number of bits in the stream
+	 * @return	A BitStream reading from the array
+	 */
+	public static BitStream wrap(byte[] data, int offset, int bitLength)
+	{
+		int byteLength = (bitLength + BYTE_LENGTH - 1) / BYTE_LENGTH;
+		if (offset < 0 || bitLength < 0 || offset + byteLength > data.length) throw new IndexOutOfBoundsException("Error, "
+				+ bitLength + " bits from offset " + offset + " do not fit in a byte array of length: " + data.length);
+		return new BitStream(new ByteBufferBitStorage(ByteBuffer.wrap(data, offset, byteLength)), bitLength);
+	}
+
+	/**
+	 * Wraps a ByteBuffer as a BitStream without copying it. The stream starts at the buffer's current position, with the
+	 * first bit of the stream the most significant bit of that byte. The buffer's position, limit and byte order are not
+	 * changed.
+	 * @param data		The buffer to wrap
+	 * @param bitLength	The number of bits in the stream
+	 * @return	A BitStream reading from the buffer
+	 */
+	public static BitStream wrap(ByteBuffer data, int bitLength)
+	{
+		int byteLength = (bitLength + BYTE_LENGTH - 1) / BYTE_LENGTH;
+		if (bitLength < 0 || byteLength > data.remaining()) throw new IndexOutOfBoundsException("Error, " + bitLength
+				+ " bits do not fit in the " + data.remaining() + " bytes remaining in the buffer");
+		ByteBuffer view = data.duplicate();
+		view.limit(view.position() + byteLength);
+		return new BitStream(new ByteBufferBitStorage(view), bitLength);
+	}
+
+	/**
+	 * Allocates a new, empty BitStream outside the heap. Write to it with a {@link BitStreamWriter}, and free it with
+	 * {@link #release()}.
+	 * @param dataSize	The length of the stream
+	 * @return	A BitStream backed by a direct ByteBuffer
+	 */
+	public static BitStream allocateDirect(int dataSize)
+	{
+		return new BitStream(BitStorage.allocateDirect(dataSize), dataSize);
+	}
+
+	/**
+	 * Returns a view of part of the stream, starting at any bit. The view shares the stream's storage, so it is made
+	 * without copying, and bit 0 of the view is the bit at the offset. Changes to the stream are seen by the view.
+	 * @param bitOffset	The position of the first bit of the view
+	 * @param bitLength	The number of bits in the view
+	 * @return	A BitStream over the range
+	 */
+	public BitStream slice(int bitOffset, int bitLength)
+	{
+		if (bitOffset < 0 || bitLength < 0 || bitOffset + bitLength > this.dataSize || bitOffset + bitLength < 0) throw new
+				IndexOutOfBoundsException("Error, a slice of " + bitLength + " bits from position " + bitOffset
+				+ " will go out of bounds of a BitStream of length " + this.dataSize);
+		this.sync();
+		if (bitOffset == 0 && bitLength == this.dataSize) return new BitStream(this.storage, bitLength);
+		return new BitStream(OffsetBitStorage.of(this.storage, bitOffset, bitLength), bitLength);
+	}
+
+	/**
+	 * Returns a copy of the stream in whichever storage is smallest for its bits. Streams that are mostly 0s or long runs
+	 * are held compressed, in containers of 65536 bits that each take the smallest of a list of set bits, a list of runs
+	 * or a bitmap; any other stream is held as plain words. Readers and writers work on either without decompressing.
+	 * @return	A compact copy of the stream
+	 */
+	public BitStream compact()
+	{
+		this.sync();
+		int wordCount = (this.dataSize + WORD_LENGTH - 1) / WORD_LENGTH;
+		SparseBitStorage sparse = SparseBitStorage.of(this.storage, wordCount);
+		if (sparse.getSizeInBytes() < wordCount * (WORD_LENGTH / BYTE_LENGTH)) return new BitStream(sparse, this.dataSize);
+		long[] words = new long[wordCount];
+		for (int i = 0, n = Math.min(wordCount, this.storage.getWordCount()); i < n; i++)
+		{
+			words[i] = this.storage.getWord(i);
+		}
+		return new BitStream(new LongArrayBitStorage(words), this.dataSize);
+	}
+
+	/**
+	 * Finds the next set bit in the stream. Compressed streams skip straight past runs of 0s without reading them.
+	 * @param fromIndex	The position to search from
+	 * @return	The position of the next set bit at or after the index, or -1 if there is none
+	 */
+	public int nextSetBit(int fromIndex)
+	{
+		if (fromIndex < 0) throw new IndexOutOfBoundsException("Error, position " + fromIndex + " is negative");
+		if (fromIndex >= this.dataSize) return -1;
+		this.sync();
+		return this.storage.nextSetBit(fromIndex, this.dataSize);
+	}
+
+	/**
+	 * Returns a new reader over the stream, starting at position 0. Readers share the stream's storage and each keep
+	 * their own location, so any number can be made cheaply and read at once from different threads, as long as nothing
+	 * writes to the stream meanwhile.
+	 * @return	A reader over the stream
+	 */
+	public BitStreamReader cursor()
+	{
+		return new BitStreamReader(this);
+	}
+
 	/**
-	 * Returns the underlying bitset attached to this BitStream
+	 * Writes the stream to a channel as bytes, most significant bit first. Any unused bits in the last byte are written
+	 * as they are held. Streams held in a ByteBuffer are written straight from the buffer without copying.
+	 * @param channel	The channel to write to
+	 * @throws IOException
+	 */
+	public void transferTo(WritableByteChannel channel) throws IOException
+	{
+		this.sync();
+		this.storage.transferTo(channel, (this.dataSize + BYTE_LENGTH - 1) / BYTE_LENGTH);
+	}
+
+	/**
+	 * Writes the stream in the binary format, with a checksum. Read it back with {@link #readFrom(DataInput)}.
+	 * @param out	The output to write to
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException
+	{
+		this.writeTo(out, true);
+	}
+
+	/**
+	 * Writes the stream in the binary format: a 10 byte header holding the exact length in bits, then the stream's bytes,
+	 * most significant bit first, copied out a chunk at a time. Unused bits in the last byte are written as 0.
+	 * @param out		The output to write to
+	 * @param checksum	True to follow the bytes with a CRC32 of them
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out, boolean checksum) throws IOException
+	{
+		this.sync();
+		out.writeInt(MAGIC);
+		out.writeByte(FORMAT_VERSION);
+		out.writeByte(checksum ? FLAG_CHECKSUM : 0);
+		out.writeInt(this.dataSize);
+		CRC32 crc = checksum ? new CRC32() : null;
+		int byteLength = byteLength(this.dataSize);
+		byte[] chunk = new byte[Math.min(CHUNK_BYTES, byteLength)];
+		for (int bytePos = 0; bytePos < byteLength; bytePos += CHUNK_BYTES)
+		{
+			int n = this.copyChunk(chunk, bytePos, byteLength);
+			if (crc != null) crc.update(chunk, 0, n);
+			out.write(chunk, 0, n);
+		}
+		if (crc != null) out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Writes the stream in the binary format into a buffer, from its position. The buffer must have room for
+	 * {@link #getSerializedSize(boolean)} bytes. The format is big-endian whatever the buffer's byte order, which is left
+	 * as it was.
+	 * @param buffer	The buffer to write to
+	 * @param checksum	True to follow the bytes with a CRC32 of them
+	 */
+	public void writeTo(ByteBuffer buffer, boolean checksum)
+	{
+		if (buffer.remaining() < this.getSerializedSize(checksum)) throw new BufferOverflowException();
+		this.sync();
+		ByteOrder order = buffer.order();
+		try
+		{
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.put((byte) FORMAT_VERSION);
+			buffer.put((byte) (checksum ? FLAG_CHECKSUM : 0));
+			buffer.putInt(this.dataSize);
+			CRC32 crc = checksum ? new CRC32() : null;
+			int byteLength = byteLength(this.dataSize);
+			byte[] chunk = new byte[Math.min(CHUNK_BYTES, byteLength)];
+			for (int bytePos = 0; bytePos < byteLength; bytePos += CHUNK_BYTES)
+			{
+				int n = this.copyChunk(chunk, bytePos, byteLength);
+				if (crc != null) crc.update(chunk, 0, n);
+				buffer.put(chunk, 0, n);
+			}
+			if (crc != null) buffer.putInt((int) crc.getValue());
+		}
+		finally
+		{
+			buffer.order(order);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes the stream takes in the binary format
+	 * @param checksum	True to count the checksum
+	 * @return
+	 */
+	public int getSerializedSize(boolean checksum)
+	{
+		return HEADER_BYTES + byteLength(this.dataSize) + (checksum ? CHECKSUM_BYTES : 0);
+	}
+
+	/**
+	 * Reads a stream written in the binary format into on-heap storage. The bytes are read a chunk at a time and packed
+	 * into words in bulk. The words grow as the bytes arrive, so a header claiming more data than the input holds fails
+	 * at the end of the input rather than allocating for the claim up front.
+	 * @param in	The input to read from
+	 * @return	The stream read
+	 * @throws IOException	If the input ends early, or does not hold a valid stream or fails its checksum
+	 */
+	public static BitStream readFrom(DataInput in) throws IOException
+	{
+		int magic = in.readInt();
+		int version = in.readUnsignedByte();
+		int flags = in.readUnsignedByte();
+		int dataSize = in.readInt();
+		checkHeader(magic, version, flags, dataSize);
+		CRC32 crc = (flags & FLAG_CHECKSUM) != 0 ? new CRC32() : null;
+		int byteLength = byteLength(dataSize);
+		int wordCount = wordCount(dataSize);
+		long[] words = new long[Math.min(wordCount, CHUNK_BYTES / (WORD_LENGTH / BYTE_LENGTH))];
+		byte[] chunk = new byte[Math.min(CHUNK_BYTES, byteLength)];
+		for (int bytePos = 0; bytePos < byteLength; bytePos += CHUNK_BYTES)
+		{
+			int n = Math.min(CHUNK_BYTES, byteLength - bytePos);
+			in.readFully(chunk, 0, n);
+			if (crc != null) crc.update(chunk, 0, n);
+			int needed = wordCount(8L * (bytePos + n));
+			if (needed > words.length)
+			{
+				words = Arrays.copyOf(words, (int) Math.min(wordCount, Math.max(needed, 2L * words.length)));
+			}
+			packChunk(chunk, n, words, bytePos);
+		}
+		if (crc != null) checkChecksum(in.readInt(), crc);
+		return new BitStream(new LongArrayBitStorage(words), dataSize);
+	}
+
+	/**
+	 * Reads a stream written in the binary format from a buffer, from its position, and moves the position past it. The
+	 * buffer's byte order is not used or changed.
+	 * @param buffer	The buffer to read from
+	 * @return	The stream read
+	 * @throws IOException	If the buffer ends early, or does not hold a valid stream or fails its checksum
+	 */
+	public static BitStream readFrom(ByteBuffer buffer) throws IOException
+	{
+		ByteBuffer view = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		if (view.remaining() < HEADER_BYTES) throw new StreamCorruptedException("Error, " + view.remaining()
+				+ " bytes are too few to hold a BitStream header");
+		int magic = view.getInt();
+		int version = view.get() & MAX_BYTE;
+		int flags = view.get() & MAX_BYTE;
+		int dataSize = view.getInt();
+		checkHeader(magic, version, flags, dataSize);
+		CRC32 crc = (flags & FLAG_CHECKSUM) != 0 ? new CRC32() : null;
+		int byteLength = byteLength(dataSize);
+		if (view.remaining() < (long) byteLength + (crc != null ? CHECKSUM_BYTES : 0)) throw new StreamCorruptedException("Error, a "
+				+ "BitStream of " + dataSize + " bits does not fit in the " + view.remaining() + " bytes remaining");
+		long[] words = new long[wordCount(dataSize)];
+		byte[] chunk = new byte[Math.min(CHUNK_BYTES, byteLength)];
+		for (int bytePos = 0; bytePos < byteLength; bytePos += CHUNK_BYTES)
+		{
+			int n = Math.min(CHUNK_BYTES, byteLength - bytePos);
+			view.get(chunk, 0, n);
+			if (crc != null) crc.update(chunk, 0, n);
+			packChunk(chunk, n, words, bytePos);
+		}
+		if (crc != null) checkChecksum(view.getInt(), crc);
+		buffer.position(view.position());
+		return new BitStream(new LongArrayBitStorage(words), dataSize);
+	}
+
+	/**
+	 * Releases the stream's storage. Off-heap storage is freed straight away, so neither this stream nor any reader or
+	 * writer sharing its storage may be used afterwards.
+	 */
+	public void release()
+	{
+		this.storage.release();
+	}
+
+	/**
+	 * Returns the data attached to this BitStream as a BitSet. The BitSet is a copy, so changes to it are not reflected in
+	 * the stream.
 	 * @return
 	 */
 	public BitSet getData()
 	{
-		return this.coreData;
+		this.sync();
+		return this.toBitSet(0, this.storage.getWordCount() * WORD_LENGTH);
 	}
-	
+
 	/**
 	 * Returns the size of this BitStream
 	 * @return
@@ -47,4 +386,224 @@ public class BitStream implements Serializable
 	{
 		return this.dataSize;
 	}
+
+	/**
+	 * Gets up to 64 bits from the stream. The first bit read is the most significant bit of the result, and the last bit
+	 * read is the least significant.
+	 * @param startPos	The position to read from
+	 * @param length	The number of bits to read, from 1 to 64
+	 * @return	The bits read, right aligned
+	 */
+	protected final long getBits(int startPos, int length)
+	{
+		int index = startPos >>> 6;
+		int offset = startPos & (WORD_LENGTH - 1);
+		long value = this.storage.getWord(index) << offset;
+		if (offset + length > WORD_LENGTH)
+		{
+			value |= this.storage.getWord(index + 1) >>> (WORD_LENGTH - offset);
+		}
+		return value >>> (WORD_LENGTH - length);
+	}
+
+	/**
+	 * Sets up to 64 bits in the stream. The most significant of the bits passed in is written first.
+	 * @param startPos	The position to write from
+	 * @param length	The number of bits to write, from 1 to 64
+	 * @param value		The bits to write, right aligned. Any higher bits are ignored
+	 */
+	protected final void setBits(int startPos, int length, long value)
+	{
+		int index = startPos >>> 6;
+		int end = (startPos & (WORD_LENGTH - 1)) + length;
+		if (end <= WORD_LENGTH)
+		{
+			int shift = WORD_LENGTH - end;
+			long mask = (-1L >>> (WORD_LENGTH - length)) << shift;
+			this.storage.setWord(index, (this.storage.getWord(index) & ~mask) | ((value << shift) & mask));
+		}
+		else
+		{
+			int spill = end - WORD_LENGTH;
+			long mask = -1L >>> (startPos & (WORD_LENGTH - 1));
+			this.storage.setWord(index, (this.storage.getWord(index) & ~mask) | ((value >>> spill) & mask));
+			mask = -1L << (WORD_LENGTH - spill);
+			this.storage.setWord(index + 1, (this.storage.getWord(index + 1) & ~mask) | (value << (WORD_LENGTH - spill)));
+		}
+	}
+
+	/**
+	 * Makes sure the storage holds every bit written to the stream. Streams that buffer writes override this to
+	 * write their buffer through; a plain stream has nothing to do.
+	 */
+	protected void sync()
+	{
+	}
+
+	/**
+	 * Returns the storage of a stream once any buffered writes have been written through, so it can be shared
+	 * @param data	The stream to share
+	 * @return	The stream's storage
+	 */
+	static BitStorage storageOf(BitStream data)
+	{
+		data.sync();
+		return data.storage;
+	}
+
+	/**
+	 * Copies a range of the stream out into a BitSet, with the first bit of the range at index 0
+	 * @param startPos	The position to copy from
+	 * @param bits		The number of bits to copy
+	 * @return	A new BitSet
+	 */
+	protected final BitSet toBitSet(int startPos, int bits)
+	{
+		long[] setWords = new long[(bits + WORD_LENGTH - 1) / WORD_LENGTH];
+		for (int i = 0; i < setWords.length; i++)
+		{
+			int chunk = Math.min(WORD_LENGTH, bits - i * WORD_LENGTH);
+			setWords[i] = Long.reverse(this.getBits(startPos + i * WORD_LENGTH, chunk) << (WORD_LENGTH - chunk));
+		}
+		return BitSet.valueOf(setWords);
+	}
+
+	/**
+	 * Packs a BitSet into stream words. BitSet keeps its lowest index in the least significant bit of each word, so each word
+	 * only needs reversing.
+	 * @param data		The data to pack
+	 * @param dataSize	The length of the stream
+	 * @return	The packed words, large enough to hold dataSize bits
+	 */
+	private static long[] toWords(BitSet data, int dataSize)
+	{
+		long[] setWords = data.toLongArray();
+		long[] packed = new long[Math.max(setWords.length, (dataSize + WORD_LENGTH - 1) / WORD_LENGTH)];
+		for (int i = 0; i < setWords.length; i++)
+		{
+			packed[i] = Long.reverse(setWords[i]);
+		}
+		return packed;
+	}
+
+	/**
+	 * Copies a chunk of the stream's bytes out for the binary format, clearing the unused bits of the last byte
+	 * @param chunk			The array to copy into
+	 * @param bytePos		The byte position of the chunk in the stream
+	 * @param byteLength	The number of bytes in the stream
+	 * @return	The number of bytes copied
+	 */
+	private int copyChunk(byte[] chunk, int bytePos, int byteLength)
+	{
+		int n = Math.min(CHUNK_BYTES, byteLength - bytePos);
+		this.storage.getBytes(bytePos, chunk, 0, n);
+		int spare = -this.dataSize & (BYTE_LENGTH - 1);
+		if (bytePos + n == byteLength && spare > 0)
+		{
+			chunk[n - 1] &= (byte) (MAX_BYTE << spare);
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the number of bytes holding a number of bits, without overflowing for lengths near Integer.MAX_VALUE
+	 * @param bits	The number of bits
+	 * @return
+	 */
+	private static int byteLength(long bits)
+	{
+		return (int) ((bits + BYTE_LENGTH - 1) >>> 3);
+	}
+
+	/**
+	 * Returns the number of words holding a number of bits, without overflowing for lengths near Integer.MAX_VALUE
+	 * @param bits	The number of bits
+	 * @return
+	 */
+	private static int wordCount(long bits)
+	{
+		return (int) ((bits + WORD_LENGTH - 1) >>> 6);
+	}
+
+	/**
+	 * Packs a chunk of bytes read in the binary format into words. Whole words are converted in bulk through a view of the
+	 * chunk; a final partial word is packed by hand.
+	 * @param chunk		The bytes read
+	 * @param length	The number of bytes in the chunk
+	 * @param words		The words to pack into
+	 * @param bytePos	The byte position of the chunk in the stream, a whole number of words
+	 */
+	private static void packChunk(byte[] chunk, int length, long[] words, int bytePos)
+	{
+		int index = bytePos / (WORD_LENGTH / BYTE_LENGTH);
+		int whole = length / (WORD_LENGTH / BYTE_LENGTH);
+		ByteBuffer.wrap(chunk, 0, length).asLongBuffer().get(words, index, whole);
+		int done = whole * (WORD_LENGTH / BYTE_LENGTH);
+		if (done < length)
+		{
+			long word = 0L;
+			for (int i = done; i < length; i++)
+			{
+				word |= (long) (chunk[i] & MAX_BYTE) << (WORD_LENGTH - BYTE_LENGTH * (i - done + 1));
+			}
+			words[index + whole] = word;
+		}
+	}
+
+	/**
+	 * Checks the header of the binary format
+	 * @param magic		The magic number read
+	 * @param version	The format version read
+	 * @param flags		The flags read
+	 * @param dataSize	The data size read
+	 * @throws StreamCorruptedException	If the header is not valid
+	 */
+	private static void checkHeader(int magic, int version, int flags, int dataSize) throws StreamCorruptedException
+	{
+		if (magic != MAGIC) throw new StreamCorruptedException("Error, 0x" + Integer.toHexString(magic)
+				+ " is not the magic number of a BitStream");
+		if (version != FORMAT_VERSION) throw new StreamCorruptedException("Error, BitStream format version " + version
+				+ " is not supported");
+		if ((flags & ~FLAG_CHECKSUM) != 0) throw new StreamCorruptedException("Error, unknown BitStream flags: " + flags);
+		if (dataSize < 0) throw new StreamCorruptedException("Error, dataSize: " + dataSize + " is negative");
+	}
+
+	/**
+	 * Checks the checksum of the binary format against the bytes read
+	 * @param expected	The checksum read
+	 * @param crc		The checksum of the bytes read
+	 * @throws StreamCorruptedException	If they do not match
+	 */
+	private static void checkChecksum(int expected, CRC32 crc) throws StreamCorruptedException
+	{
+		if (expected != (int) crc.getValue()) throw new StreamCorruptedException("Error, the BitStream checksum 0x"
+				+ Integer.toHexString(expected) + " does not match its data, 0x" + Long.toHexString(crc.getValue()));
+	}
+
+	/**
+	 * Serialises the stream, writing the data in the binary format rather than as an object graph
+	 * @param out	The stream to write to
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		this.sync();
+		out.defaultWriteObject();
+		this.writeTo(out, true);
+	}
+
+	/**
+	 * Deserialises the stream from the binary format into on-heap storage
+	 * @param in	The stream to read from
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		BitStream data = readFrom(in);
+		if (data.dataSize != this.dataSize) throw new StreamCorruptedException("Error, the BitStream data holds "
+				+ data.dataSize + " bits, but the stream is " + this.dataSize + " bits long");
+		this.storage = data.storage;
+	}
 }
@@ -20,6 +20,11 @@ public class BitStreamReader extends BitStream
 	 */
 	private static final int BYTE_LENGTH = 8;
 	
+	/**
+	 * Bytes in a storage word
+	 */
+	private static final int WORD_BYTES = WORD_LENGTH / BYTE_LENGTH;
+	
 	/**
 	 * Current location of the reader
 	 */
@@ -31,11 +36,12 @@ public class BitStreamReader extends BitStream
 	 */
 	public BitStreamReader(BitStream data)
 	{
-		super(data.getData(),data.getDataSize());
+		super(storageOf(data), data.getDataSize());
 	}
 	
 	/**
-	 * General constructor, takes in a bitset and builds a reader.
+	 * General constructor, takes in a bitset and builds a reader. The reader ends at the last set bit of the bitset, so
+	 * any trailing 0 bits are lost; use {@link #BitStreamReader(BitSet, int)} if the data may end in 0s.
 	 * @param data
 	 */
 	public BitStreamReader(BitSet data)
@@ -44,81 +50,247 @@ public class BitStreamReader extends BitStream
 	}
 	
 	/**
-	 * private method to read bits from the bitset. Reads from the most significant bit
-	 * @param bits The amount of bits to read
-	 * @return	Returns a byte holding the number of bits read
+	 * General constructor, takes in a bitset and the number of bits it holds, and builds a reader.
+	 * @param data		The bitset to read
+	 * @param dataSize	The number of bits in the data
+	 */
+	public BitStreamReader(BitSet data, int dataSize)
+	{
+		super(data, dataSize);
+	}
+	
+	/**
+	 * private method to read bits from the stream and move the reader on. The first bit read is the most significant
+	 * bit of the result
+	 * @param bits	Number of bits to read, from 1 to 64
+	 * @return	Returns the bits read, right aligned
+	 */
+	private long readBits(int bits)
+	{
+		long returnVal = this.getBits(this.currentLocation, bits);
+		this.currentLocation += bits;
+		return returnVal;
+	}
+	
+	/**
+	 * private method to look at the next 64 bits of the stream without moving the reader. Bits past the end of the
+	 * stream read as 0
+	 * @param startPos	The position to look from
+	 * @return	The bits, left aligned
+	 */
+	private long peekWord(int startPos)
+	{
+		int available = this.dataSize - startPos;
+		if (available >= WORD_LENGTH) return this.getBits(startPos, WORD_LENGTH);
+		if (available <= 0) return 0L;
+		return this.getBits(startPos, available) << (WORD_LENGTH - available);
+	}
+	
+	/**
+	 * private method to count the 0s before the next 1 in the stream, a word at a time, without moving the reader
+	 * @return	The number of 0s
+	 */
+	private int countZeros()
+	{
+		int pos = this.currentLocation;
+		while (true)
+		{
+			long word = this.peekWord(pos);
+			if (word != 0L) return pos - this.currentLocation + Long.numberOfLeadingZeros(word);
+			if (this.dataSize - pos <= WORD_LENGTH) throw new IndexOutOfBoundsException("Error, no 1 bit follows the "
+					+ (this.dataSize - this.currentLocation) + " bits of 0s remaining in the BitStream");
+			pos += WORD_LENGTH;
+		}
+	}
+	
+	/**
+	 * private method to read an Elias gamma code. Codes that fit in the next 64 bits are decoded from a single word.
+	 * @param maxZeros	The most leading 0s a valid code may have
+	 * @return	The value read, 1 or more
+	 */
+	private long readGamma(int maxZeros)
+	{
+		long word = this.peekWord(this.currentLocation);
+		int zeros = Long.numberOfLeadingZeros(word);
+		if (zeros < WORD_LENGTH / 2)
+		{
+			checkValidRead(2 * zeros + 1);
+			this.currentLocation += 2 * zeros + 1;
+			return word >>> (WORD_LENGTH - 2 * zeros - 1);
+		}
+		zeros = this.countZeros();
+		if (zeros > maxZeros) throw new IllegalStateException("Error, the code at position " + this.currentLocation
+				+ " has " + zeros + " leading 0s, which is too long for a long");
+		checkValidRead(2 * zeros + 1);
+		this.currentLocation += zeros;
+		return this.readBits(zeros + 1);
+	}
+	
+	/**
+	 * private method to read a LEB128 varint. Up to 8 bytes are decoded from a single word.
+	 * @param signed	Whether to sign extend the value from the last group read
+	 * @return	The value read
 	 */
-	private byte readBitsLeft(int bits)
+	private long readLEB128(boolean signed)
 	{
-		byte returnVal = 0;
-		for (int i = 1; i <= bits; i++)
+		long word = this.peekWord(this.currentLocation);
+		long value = 0L;
+		int shift = 0;
+		int group;
+		do
 		{
-			if (this.coreData.get(this.currentLocation))
+			if (shift >= 10 * 7) throw new IllegalStateException("Error, the LEB128 varint at position "
+					+ this.currentLocation + " is too long for a long");
+			if (shift == 8 * 7)
 			{
-				returnVal += (1 << (BYTE_LENGTH - i));
+				word = this.peekWord(this.currentLocation + WORD_LENGTH);
 			}
-			currentLocation++;
+			group = (int) (word >>> (WORD_LENGTH - BYTE_LENGTH));
+			word <<= BYTE_LENGTH;
+			value |= (long) (group & 0x7F) << shift;
+			shift += 7;
 		}
-		return returnVal;
+		while ((group & 0x80) != 0);
+		checkValidRead(shift / 7 * BYTE_LENGTH);
+		this.currentLocation += shift / 7 * BYTE_LENGTH;
+		if (signed && shift < WORD_LENGTH && (group & 0x40) != 0)
+		{
+			value |= -1L << shift;
+		}
+		return value;
 	}
 	
 	/**
-	 * private method to read bits from the bitset. Reads so that the last bit returned is the least significant
-	 * bit in the byte
-	 * @param bits	Number of bits to read
-	 * @return	Returns a byte holding the number of bits read
+	 * private method to unpack fixed width integers. The storage is walked a word at a time, so each word is fetched once
+	 * and each value is cut from at most two words with a shift and a mask, with no checks inside the loop.
+	 * @param dest		The array to unpack into
+	 * @param offset	The offset in the array of the first value
+	 * @param count		The number of values to unpack
+	 * @param bitWidth	The number of bits per value, from 1 to 32
+	 * @param startPos	The position to unpack from
 	 */
-	private byte readBitsRight(int bits)
+	private void unpack(int[] dest, int offset, int count, int bitWidth, int startPos)
 	{
-		byte returnVal = 0;
-		for (int i = 1; i <= bits; i++)
+		if (count == 0) return;
+		BitStorage words = this.storage;
+		long mask = -1L >>> (WORD_LENGTH - bitWidth);
+		int index = startPos >>> 6;
+		int used = startPos & (WORD_LENGTH - 1);
+		long word = words.getWord(index);
+		for (int end = offset + count; offset < end; offset++)
 		{
-			if (this.coreData.get(this.currentLocation))
+			used += bitWidth;
+			if (used <= WORD_LENGTH)
+			{
+				dest[offset] = (int) ((word >>> (WORD_LENGTH - used)) & mask);
+				if (used == WORD_LENGTH && offset + 1 < end)
+				{
+					word = words.getWord(++index);
+					used = 0;
+				}
+			}
+			else
 			{
-				returnVal += (1 << (bits - i));
+				used -= WORD_LENGTH;
+				long next = words.getWord(++index);
+				dest[offset] = (int) (((word << used) | (next >>> (WORD_LENGTH - used))) & mask);
+				word = next;
 			}
-			currentLocation++;
 		}
-		return returnVal;
 	}
-
+	
 	/**
-	 * private method to get bits from the bitset starting at an offset. Reads from the most significant bit
-	 * @param bits 		The amount of bits to read
-	 * @param startPos	The starting position to read from
-	 * @return	Returns a byte holding the number of bits read
+	 * private method to unpack fixed width longs, as {@link #unpack(int[], int, int, int, int)} does for integers
+	 * @param dest		The array to unpack into
+	 * @param offset	The offset in the array of the first value
+	 * @param count		The number of values to unpack
+	 * @param bitWidth	The number of bits per value, from 1 to 64
+	 * @param startPos	The position to unpack from
 	 */
-	private byte getBitsLeft(int bits, int startPos)
+	private void unpack(long[] dest, int offset, int count, int bitWidth, int startPos)
 	{
-		byte returnVal = 0;
-		for (int i = 1; i <= bits; i++)
+		if (count == 0) return;
+		BitStorage words = this.storage;
+		long mask = -1L >>> (WORD_LENGTH - bitWidth);
+		int index = startPos >>> 6;
+		int used = startPos & (WORD_LENGTH - 1);
+		long word = words.getWord(index);
+		for (int end = offset + count; offset < end; offset++)
 		{
-			if (this.coreData.get(startPos))
+			used += bitWidth;
+			if (used <= WORD_LENGTH)
 			{
-				returnVal += (1 << (BYTE_LENGTH - i));
+				dest[offset] = (word >>> (WORD_LENGTH - used)) & mask;
+				if (used == WORD_LENGTH && offset + 1 < end)
+				{
+					word = words.getWord(++index);
+					used = 0;
+				}
+			}
+			else
+			{
+				used -= WORD_LENGTH;
+				long next = words.getWord(++index);
+				dest[offset] = ((word << used) | (next >>> (WORD_LENGTH - used))) & mask;
+				word = next;
 			}
-			startPos++;
 		}
-		return returnVal;
 	}
 	
 	/**
-	 * private method to get bits from the bitset starting at an offset. Reads so that the last bit returned 
-	 * is the least significant bit in the byte
-	 * @param bits 		The amount of bits to read
-	 * @param startPos	The starting position to read from
-	 * @return	Returns a byte holding the number of bits read
+	 * Checks an array range and returns the number of bits it is packed in
+	 * @param arrayLength	The length of the array
+	 * @param offset		The offset of the first value
+	 * @param count			The number of values
+	 * @param bitWidth		The number of bits per value
+	 * @return	The number of bits
+	 */
+	private static int packedLength(int arrayLength, int offset, int count, int bitWidth)
+	{
+		if (offset < 0 || count < 0 || offset + count > arrayLength || offset + count < 0) throw new IndexOutOfBoundsException("Error, "
+				+ count + " values from offset " + offset + " do not fit in an array of length: " + arrayLength);
+		long bits = (long) count * bitWidth;
+		if (bits > Integer.MAX_VALUE) throw new IndexOutOfBoundsException("Error, " + bits + " bits will not fit in a BitStream");
+		return (int) bits;
+	}
+	
+	/**
+	 * private method to copy bits into a byte array. Whole bytes are filled first, and any remaining bits are placed in
+	 * the most significant end of the last byte. Byte aligned copies are handed to the storage in bulk, and unaligned
+	 * copies are shifted out 64 bits at a time.
+	 * @param bits		The number of bits to copy
+	 * @param startPos	The position to copy from
+	 * @return	A byte array of length (ceil (bits / 8))
 	 */
-	private byte getBitsRight(int bits, int startPos)
+	private byte[] getByteArray(int bits, int startPos)
 	{
-		byte returnVal = 0;
-		for (int i = 1; i <= bits; i++)
+		byte[] returnVal = new byte[(bits + BYTE_LENGTH - 1) / BYTE_LENGTH];
+		int wholeBytes = bits / BYTE_LENGTH;
+		if (startPos % BYTE_LENGTH == 0)
+		{
+			this.storage.getBytes(startPos / BYTE_LENGTH, returnVal, 0, wholeBytes);
+		}
+		else
 		{
-			if (this.coreData.get(startPos))
+			int i = 0;
+			for (; i + WORD_BYTES <= wholeBytes; i += WORD_BYTES)
+			{
+				long word = this.getBits(startPos + i * BYTE_LENGTH, WORD_LENGTH);
+				for (int j = WORD_BYTES - 1; j >= 0; j--)
+				{
+					returnVal[i + j] = (byte) word;
+					word >>>= BYTE_LENGTH;
+				}
+			}
+			for (; i < wholeBytes; i++)
 			{
-				returnVal += (1 << (bits - i));
+				returnVal[i] = (byte) this.getBits(startPos + i * BYTE_LENGTH, BYTE_LENGTH);
 			}
-			startPos++;
+		}
+		int remainder = bits % BYTE_LENGTH;
+		if (remainder > 0)
+		{
+			returnVal[wholeBytes] = (byte) (this.getBits(startPos + wholeBytes * BYTE_LENGTH, remainder) << (BYTE_LENGTH - remainder));
 		}
 		return returnVal;
 	}
@@ -130,9 +302,7 @@ public class BitStreamReader extends BitStream
 	public boolean readBoolean()
 	{
 		checkValidRead(1);
-		boolean returnVal = false;
-		if (this.readBitsRight(1) % 2 == 1) returnVal = true;
-		return returnVal;
+		return this.readBits(1) != 0;
 	}
 	
 	/**
@@ -145,7 +315,7 @@ public class BitStreamReader extends BitStream
 		checkValidRead(length);
 		if (length < 1 || length > 8) throw new IllegalArgumentException("Error, bitLength: " + length +
 				" is out of range for a byte");
-		return this.readBitsLeft(length);
+		return (byte) (this.readBits(length) << (BYTE_LENGTH - length));
 	}
 	
 	/**
@@ -158,13 +328,8 @@ public class BitStreamReader extends BitStream
 		checkValidRead(length);
 		if (length < 1) throw new IllegalArgumentException("Error, bitLength: " + length +
 				" is out of range for a byte array");
-		int arraySize = (int) Math.ceil(((double)length) / BYTE_LENGTH);
-		byte[] returnVal = new byte[arraySize];
-		for (int i = 0; i < (arraySize - 1); i++)
-		{
-			returnVal[i] = this.readBitsLeft(BYTE_LENGTH);
-		}
-		returnVal[(arraySize - 1)] = this.readBitsLeft(length % BYTE_LENGTH);
+		byte[] returnVal = this.getByteArray(length, this.currentLocation);
+		this.currentLocation += length;
 		return returnVal;
 	}
 	
@@ -178,14 +343,7 @@ public class BitStreamReader extends BitStream
 		checkValidRead(length);
 		if (length < 1 || length > BYTE_LENGTH * 4) throw new IllegalArgumentException("Error, bitLength: " + length +
 				" is out of range for an integer");
-		int arraySize = (int) Math.ceil(((double)length) / BYTE_LENGTH);
-		int returnVal = 0;
-		for (int i = 1; i <= (arraySize - 1); i++)
-		{
-			returnVal += (this.readBitsRight(BYTE_LENGTH) << (length - (i * BYTE_LENGTH)));
-		}
-		returnVal += this.readBitsLeft(length % BYTE_LENGTH);
-		return returnVal;
+		return (int) this.readBits(length);
 	}
 	
 	/**
@@ -198,14 +356,7 @@ public class BitStreamReader extends BitStream
 		if (length < 1 || length > 8 * BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + length +
 				" is out of range for a Long");
 		checkValidRead(length);
-		int arraySize = (int) Math.ceil(((double)length) / BYTE_LENGTH);
-		long returnVal = 0L;
-		for (int i = 1; i <= (arraySize - 1); i++)
-		{
-			returnVal += (this.readBitsRight(BYTE_LENGTH) << (length - (i * BYTE_LENGTH)));
-		}
-		returnVal += this.readBitsLeft(length % BYTE_LENGTH);
-		return returnVal;
+		return this.readBits(length);
 	}
 	
 	/**
@@ -215,11 +366,106 @@ public class BitStreamReader extends BitStream
 	public char readChar()
 	{
 		checkValidRead(16);
-		char returnVal;
-		byte[] byteData;
-		byteData = this.readBytes(16);
-		returnVal = (char)(byteData[1] << BYTE_LENGTH + byteData[0]);
-		return returnVal;
+		return (char) this.readBits(16);
+	}
+	
+	/**
+	 * Reads and returns a double, using its 64 bit IEEE 754 form
+	 * @return	A double.
+	 */
+	public double readDouble()
+	{
+		checkValidRead(64);
+		return Double.longBitsToDouble(this.readBits(64));
+	}
+	
+	/**
+	 * Reads and returns a float, using its 32 bit IEEE 754 form
+	 * @return	A float.
+	 */
+	public float readFloat()
+	{
+		checkValidRead(32);
+		return Float.intBitsToFloat((int) this.readBits(32));
+	}
+	
+	/**
+	 * Reads an unsigned Exp-Golomb code
+	 * @return	The value read
+	 */
+	public long readUnsignedExpGolomb()
+	{
+		return this.readGamma(Long.SIZE - 2) - 1;
+	}
+	
+	/**
+	 * Reads a signed Exp-Golomb code, where odd codes are positive and even codes are 0 or negative
+	 * @return	The value read
+	 */
+	public long readSignedExpGolomb()
+	{
+		long code = this.readGamma(Long.SIZE - 2);
+		return (code & 1) == 0 ? code >>> 1 : -(code >>> 1);
+	}
+	
+	/**
+	 * Reads an Elias gamma code
+	 * @return	The value read, 1 or more
+	 */
+	public long readEliasGamma()
+	{
+		return this.readGamma(Long.SIZE - 2);
+	}
+	
+	/**
+	 * Reads an Elias delta code
+	 * @return	The value read, 1 or more
+	 */
+	public long readEliasDelta()
+	{
+		int start = this.currentLocation;
+		long bits = this.readGamma(5);
+		if (bits >= Long.SIZE)
+		{
+			this.currentLocation = start;
+			throw new IllegalStateException("Error, the Elias delta code at position " + start + " is too long for a long");
+		}
+		checkValidRead((int) bits - 1);
+		return bits == 1 ? 1L : (1L << (bits - 1)) | this.readBits((int) bits - 1);
+	}
+	
+	/**
+	 * Reads a Golomb-Rice code
+	 * @param k	The Rice parameter, from 0 to 63
+	 * @return	The value read
+	 */
+	public long readRice(int k)
+	{
+		if (k < 0 || k >= WORD_LENGTH) throw new IllegalArgumentException("Error, k: " + k + " is out of range for a Rice code");
+		int quotient = this.countZeros();
+		checkValidRead(quotient + 1 + k);
+		if (quotient > (Long.MAX_VALUE >>> k)) throw new IllegalStateException("Error, the Rice code at position "
+				+ this.currentLocation + " is too long for a long");
+		this.currentLocation += quotient + 1;
+		return k == 0 ? quotient : ((long) quotient << k) | this.readBits(k);
+	}
+	
+	/**
+	 * Reads an unsigned LEB128 varint
+	 * @return	The value read, as unsigned
+	 */
+	public long readUnsignedLEB128()
+	{
+		return this.readLEB128(false);
+	}
+	
+	/**
+	 * Reads a signed LEB128 varint
+	 * @return	The value read
+	 */
+	public long readSignedLEB128()
+	{
+		return this.readLEB128(true);
 	}
 	
 	/**
@@ -234,6 +480,53 @@ public class BitStreamReader extends BitStream
 		return new String(this.readBytes(bits));
 	}
 	
+	/**
+	 * Reads integers packed using bitWidth bits each
+	 * @param dest		The array to read into
+	 * @param offset	The offset in the array of the first integer
+	 * @param count		The number of integers to read
+	 * @param bitWidth	The number of bits per integer, from 1 to 32
+	 */
+	public void readInts(int[] dest, int offset, int count, int bitWidth)
+	{
+		if (bitWidth < 1 || bitWidth > BYTE_LENGTH * 4) throw new IllegalArgumentException("Error, bitLength: " + bitWidth +
+				" is out of range for an integer");
+		int bits = packedLength(dest.length, offset, count, bitWidth);
+		checkValidRead(bits);
+		this.unpack(dest, offset, count, bitWidth, this.currentLocation);
+		this.currentLocation += bits;
+	}
+	
+	/**
+	 * Reads longs packed using bitWidth bits each
+	 * @param dest		The array to read into
+	 * @param offset	The offset in the array of the first long
+	 * @param count		The number of longs to read
+	 * @param bitWidth	The number of bits per long, from 1 to 64
+	 */
+	public void readLongs(long[] dest, int offset, int count, int bitWidth)
+	{
+		if (bitWidth < 1 || bitWidth > 8 * BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + bitWidth +
+				" is out of range for a Long");
+		int bits = packedLength(dest.length, offset, count, bitWidth);
+		checkValidRead(bits);
+		this.unpack(dest, offset, count, bitWidth, this.currentLocation);
+		this.currentLocation += bits;
+	}
+	
+	/**
+	 * Reads the next bits as a view over this reader's storage, without copying them
+	 * @param bits	The number of bits to read
+	 * @return	A BitStream over the bits read
+	 */
+	public BitStream readSlice(int bits)
+	{
+		checkValidRead(bits);
+		BitStream returnVal = this.slice(this.currentLocation, bits);
+		this.currentLocation += bits;
+		return returnVal;
+	}
+	
 	/**
 	 * Reads and returns a bitset of length bits
 	 * @param bits	The length of the bitset to return
@@ -242,12 +535,9 @@ public class BitStreamReader extends BitStream
 	public BitSet readBitSet(int bits)
 	{
 		checkValidRead(bits);
-		BitStreamWriter bsw = new BitStreamWriter(bits);
-		for (int i = 0; i < bits; i++)
-		{
-			bsw.append(this.readBoolean());
-		}		
-		return bsw.getData();
+		BitSet returnVal = this.toBitSet(this.currentLocation, bits);
+		this.currentLocation += bits;
+		return returnVal;
 	}
 	
 	/**
@@ -258,9 +548,7 @@ public class BitStreamReader extends BitStream
 	public boolean getBoolean(int startPos)
 	{
 		checkValidGet(1, startPos);
-		boolean returnVal = false;
-		if (this.getBitsRight(1, startPos) % 2 == 1) returnVal = true;
-		return returnVal;
+		return this.getBits(startPos, 1) != 0;
 	}
 	
 	/**
@@ -274,7 +562,7 @@ public class BitStreamReader extends BitStream
 		checkValidGet(length, startPos);
 		if (length < 1 || length > 8) throw new IllegalArgumentException("Error, bitLength: " + length +
 				" is out of range for a byte");
-		return this.getBitsLeft(length, startPos);
+		return (byte) (this.getBits(startPos, length) << (BYTE_LENGTH - length));
 	}
 	
 	/**
@@ -288,14 +576,7 @@ public class BitStreamReader extends BitStream
 		checkValidGet(length, startPos);
 		if (length < 1) throw new IllegalArgumentException("Error, bitLength: " + length +
 				" is out of range for a byte array");
-		int arraySize = (int) Math.ceil(((double)length) / BYTE_LENGTH);
-		byte[] returnVal = new byte[arraySize];
-		for (int i = 0; i < (arraySize - 1); i++)
-		{
-			returnVal[i] = this.getBitsLeft(BYTE_LENGTH, startPos + i * BYTE_LENGTH);
-		}
-		returnVal[(arraySize - 1)] = this.getBitsLeft(length % BYTE_LENGTH, startPos + ((arraySize - 1) * BYTE_LENGTH));
-		return returnVal;
+		return this.getByteArray(length, startPos);
 	}
 	
 	/**
@@ -309,14 +590,7 @@ public class BitStreamReader extends BitStream
 		checkValidGet(length, startPos);
 		if (length < 1 || length > BYTE_LENGTH * 4) throw new IllegalArgumentException("Error, bitLength: " + length +
 				" is out of range for an integer");
-		int arraySize = (int) Math.ceil(((double)length) / BYTE_LENGTH);
-		int returnVal = 0;
-		for (int i = 1; i <= (arraySize - 1); i++)
-		{
-			returnVal += (this.getBitsLeft(BYTE_LENGTH, startPos + (i - 1) * BYTE_LENGTH) << (length - (i * BYTE_LENGTH)));
-		}
-		returnVal += this.getBitsLeft(length % BYTE_LENGTH, startPos + (arraySize - 1) * BYTE_LENGTH);
-		return returnVal;
+		return (int) this.getBits(startPos, length);
 	}
 	
 	/**
@@ -330,14 +604,7 @@ public class BitStreamReader extends BitStream
 		checkValidGet(length, startPos);
 		if (length < 1 || length > 8 * BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + length +
 				" is out of range for a Long");
-		int arraySize = (int) Math.ceil(((double)length) / BYTE_LENGTH);
-		long returnVal = 0L;
-		for (int i = 1; i <= (arraySize - 1); i++)
-		{
-			returnVal += (this.getBitsLeft(BYTE_LENGTH, startPos + (i-1)*BYTE_LENGTH) << (length - (i * BYTE_LENGTH)));
-		}
-		returnVal += this.getBitsLeft(length % BYTE_LENGTH, startPos + (arraySize - 1) * BYTE_LENGTH);
-		return returnVal;
+		return this.getBits(startPos, length);
 	}
 	
 	/**
@@ -348,11 +615,61 @@ public class BitStreamReader extends BitStream
 	public char getChar(int startPos)
 	{
 		checkValidGet(16, startPos);
-		char returnVal;
-		byte[] byteData;
-		byteData = this.getBytes(16, startPos);
-		returnVal = (char)(byteData[1] << BYTE_LENGTH + byteData[0]);
-		return returnVal;
+		return (char) this.getBits(startPos, 16);
+	}
+	
+	/**
+	 * Reads and returns a double, using its 64 bit IEEE 754 form
+	 * @param startPos	The position to read from
+	 * @return	A double.
+	 */
+	public double getDouble(int startPos)
+	{
+		checkValidGet(64, startPos);
+		return Double.longBitsToDouble(this.getBits(startPos, 64));
+	}
+	
+	/**
+	 * Reads and returns a float, using its 32 bit IEEE 754 form
+	 * @param startPos	The position to read from
+	 * @return	A float.
+	 */
+	public float getFloat(int startPos)
+	{
+		checkValidGet(32, startPos);
+		return Float.intBitsToFloat((int) this.getBits(startPos, 32));
+	}
+	
+	/**
+	 * Gets integers packed using bitWidth bits each
+	 * @param dest		The array to read into
+	 * @param offset	The offset in the array of the first integer
+	 * @param count		The number of integers to read
+	 * @param bitWidth	The number of bits per integer, from 1 to 32
+	 * @param startPos	The position to read from
+	 */
+	public void getInts(int[] dest, int offset, int count, int bitWidth, int startPos)
+	{
+		if (bitWidth < 1 || bitWidth > BYTE_LENGTH * 4) throw new IllegalArgumentException("Error, bitLength: " + bitWidth +
+				" is out of range for an integer");
+		checkValidGet(packedLength(dest.length, offset, count, bitWidth), startPos);
+		this.unpack(dest, offset, count, bitWidth, startPos);
+	}
+	
+	/**
+	 * Gets longs packed using bitWidth bits each
+	 * @param dest		The array to read into
+	 * @param offset	The offset in the array of the first long
+	 * @param count		The number of longs to read
+	 * @param bitWidth	The number of bits per long, from 1 to 64
+	 * @param startPos	The position to read from
+	 */
+	public void getLongs(long[] dest, int offset, int count, int bitWidth, int startPos)
+	{
+		if (bitWidth < 1 || bitWidth > 8 * BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + bitWidth +
+				" is out of range for a Long");
+		checkValidGet(packedLength(dest.length, offset, count, bitWidth), startPos);
+		this.unpack(dest, offset, count, bitWidth, startPos);
 	}
 	
 	/**
@@ -377,12 +694,7 @@ public class BitStreamReader extends BitStream
 	public BitSet getBitSet(int bits, int startPos)
 	{
 		checkValidGet(bits, startPos);
-		BitStreamWriter bsw = new BitStreamWriter(bits);
-		for (int i = 0; i < bits; i++)
-		{
-			bsw.append(this.getBoolean(startPos + i));
-		}		
-		return bsw.getData();
+		return this.toBitSet(startPos, bits);
 	}
 	
 	/**
@@ -411,6 +723,29 @@ public class BitStreamReader extends BitStream
 	{
 		this.currentLocation += bits;
 	}
+	
+	/**
+	 * Returns the next bits of the stream without moving the reader. Bits past the end of the stream read as 0, so a
+	 * decoder can look further ahead than the data goes.
+	 * @param bits	The number of bits to look at, from 1 to 64
+	 * @return	The bits, right aligned
+	 */
+	public long peekBits(int bits)
+	{
+		if (bits < 1 || bits > WORD_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + bits +
+				" is out of range for a peek");
+		return this.peekWord(this.currentLocation) >>> (WORD_LENGTH - bits);
+	}
+	
+	/**
+	 * Moves the reader past bits already looked at with {@link #peekBits(int)}
+	 * @param bits	The number of bits to move past
+	 */
+	public void consume(int bits)
+	{
+		checkValidRead(bits);
+		this.currentLocation += bits;
+	}
 
 	/**
 	 * Validates the read to ensure there are enough bits remaining to complete a read
@@ -4,6 +4,11 @@ import java.util.BitSet;
 
 /**
  * Class to enable writing to a BitStream. Contains functions to append and set data, as well as basic clear and padding functions.
+ * <p>
+ * A writer is either fixed size, and throws an IndexOutOfBoundsException once its size is used up, or growable. A growable
+ * writer's size is the furthest bit written so far, and its storage grows geometrically as needed. Growing replaces the
+ * storage, so BitStreams taken from the writer with {@link #getBitStream()} will not see writes made after a grow. Storage
+ * replaced by a grow is not released, as other streams may still share it.
  * 
  * @author AireL
  */
@@ -17,15 +22,53 @@ public class BitStreamWriter extends BitStream
 	private static final int DEFAULT_BIT_LENGTH = 81920;
 	private static final int MAX_BYTE = 0xFF;
 	private static final int BYTE_LENGTH = 8;
+	private static final int MAX_WORDS = (Integer.MAX_VALUE / WORD_LENGTH) + 1;
+	
+	/**
+	 * The ways a source range can be combined into the writer
+	 */
+	private static final int OP_COPY = 0;
+	private static final int OP_AND = 1;
+	private static final int OP_OR = 2;
+	private static final int OP_XOR = 3;
+	private static final int OP_AND_NOT = 4;
 			
 	private int currentLocation = 0;
 	
+	/**
+	 * The bits appended to the word currently being filled. Whole words are written through to the stream as they fill.
+	 * Only the bits in the buffer mask are held; the rest are 0.
+	 */
+	private long bitBuffer;
+	
+	/**
+	 * The bits of the buffered word this writer has appended. Only these are written through, merged into the word as
+	 * it is in the storage then, so writes other writers made to the rest of the word in the meantime are kept.
+	 */
+	private long bitBufferMask;
+	
+	/**
+	 * The index of the word held in the bit buffer, or -1 if the buffer is empty
+	 */
+	private int bitBufferIndex = -1;
+	
+	/**
+	 * Whether the writer grows to fit the data written to it
+	 */
+	private final boolean growable;
+	
+	/**
+	 * Whether appends skip the bit buffer and write each word through at once. Set for writers over a stream's existing
+	 * storage, so that readers and other writers over that storage see each append straight away.
+	 */
+	private final boolean writeThrough;
+	
 	/**
 	 * Constructor - uses a default size for the bitset
 	 */
 	public BitStreamWriter()
 	{
-		super(new BitSet(DEFAULT_BIT_LENGTH), DEFAULT_BIT_LENGTH);
+		this(DEFAULT_BIT_LENGTH);
 	}
 	
 	/**
@@ -34,83 +77,535 @@ public class BitStreamWriter extends BitStream
 	 */
 	public BitStreamWriter(int dataSize)
 	{
-		super(new BitSet(DEFAULT_BIT_LENGTH), dataSize);
+		this(dataSize, false);
+	}
+	
+	/**
+	 * Constructor, uses the entered size for the bitset and optionally lets the writer grow beyond it
+	 * @param dataSize	The bitSet size. For a growable writer this is the initial capacity, and the writer starts empty
+	 * @param growable	True if the writer should grow as data is written to it
+	 */
+	public BitStreamWriter(int dataSize, boolean growable)
+	{
+		super(new LongArrayBitStorage(new long[(dataSize + WORD_LENGTH - 1) / WORD_LENGTH]), growable ? 0 : dataSize);
+		this.growable = growable;
+		this.writeThrough = false;
 	}
 	
 	/**
-	 * Copy constructor
+	 * Constructor, writes to the storage passed in. A fixed size writer uses the whole of the storage, while a growable
+	 * writer starts empty and grows the storage as needed, keeping it on or off the heap as it was.
+	 * @param storage	The storage to write to
+	 * @param growable	True if the writer should grow as data is written to it
+	 */
+	public BitStreamWriter(BitStorage storage, boolean growable)
+	{
+		super(storage, growable ? 0 : storage.getWordCount() * WORD_LENGTH);
+		this.growable = growable;
+		this.writeThrough = false;
+	}
+	
+	/**
+	 * Copy constructor. The new writer gets its own copy of the data, so the two writers do not affect each other.
 	 * @param copyFrom	Copy target
 	 */
 	public BitStreamWriter(BitStreamWriter copyFrom)
 	{
-		super(copyFrom.coreData, copyFrom.dataSize);
+		super(storageOf(copyFrom).copyOf(copyFrom.storage.getWordCount()), copyFrom.dataSize);
+		this.growable = copyFrom.growable;
+		this.writeThrough = false;
 	}
 	
 	/**
-	 * Creates a writer from the BitStream passed in
+	 * Creates a writer from the BitStream passed in. A plain stream's storage is shared, so the writer can fill wrapped
+	 * or off-heap streams in place; the writer then writes every append straight through, so other writers and readers
+	 * over the same stream see it at once. A writer whose stream is shared only ever writes back the bits it appended,
+	 * so neither writer overwrites the other. A writer passed in is copied instead, as with the copy
+	 * constructor, since its own buffered appends could otherwise overwrite this writer's.
 	 * @param data	BitStream to write
 	 */
 	public BitStreamWriter(BitStream data)
 	{
-		super(data.getData(),data.getDataSize());
+		super(data instanceof BitStreamWriter ? storageOf(data).copyOf(data.storage.getWordCount()) : storageOf(data),
+				data.getDataSize());
+		this.growable = false;
+		this.writeThrough = !(data instanceof BitStreamWriter);
+	}
+	
+	/**
+	 * Appends up to 64 bits through the bit buffer. The most significant of the bits passed in is written first.
+	 * @param data		The bits to append, right aligned
+	 * @param bitLength	The number of bits to append, from 1 to 64
+	 */
+	private void appendBits(long data, int bitLength)
+	{
+		if (this.writeThrough)
+		{
+			this.setBits(this.currentLocation, bitLength, data);
+			this.currentLocation += bitLength;
+			return;
+		}
+		int index = this.currentLocation >>> 6;
+		if (index != this.bitBufferIndex)
+		{
+			this.flush();
+			this.bitBuffer = 0L;
+			this.bitBufferMask = 0L;
+			this.bitBufferIndex = index;
+		}
+		int free = WORD_LENGTH - (this.currentLocation & (WORD_LENGTH - 1));
+		if (bitLength < free)
+		{
+			int shift = free - bitLength;
+			long mask = (-1L >>> (WORD_LENGTH - bitLength)) << shift;
+			this.bitBuffer = (this.bitBuffer & ~mask) | ((data << shift) & mask);
+			this.bitBufferMask |= mask;
+		}
+		else
+		{
+			int spill = bitLength - free;
+			long mask = -1L >>> (WORD_LENGTH - free);
+			this.bitBuffer = (this.bitBuffer & ~mask) | ((data >>> spill) & mask);
+			this.bitBufferMask |= mask;
+			this.flush();
+			this.bitBufferIndex = -1;
+			if (spill > 0)
+			{
+				this.bitBufferMask = -1L << (WORD_LENGTH - spill);
+				this.bitBuffer = data << (WORD_LENGTH - spill);
+				this.bitBufferIndex = index + 1;
+			}
+		}
+		this.currentLocation += bitLength;
+	}
+	
+	/**
+	 * Appends the first bits of a byte array. Whole bytes at a byte aligned position are copied into the storage in bulk,
+	 * and otherwise the bytes are packed and appended a word at a time.
+	 * @param data		The data to append
+	 * @param bitLength	The number of bits to append
+	 */
+	private void appendByteArray(byte[] data, int bitLength)
+	{
+		if (this.currentLocation % BYTE_LENGTH == 0 && bitLength >= WORD_LENGTH)
+		{
+			int wholeBytes = bitLength / BYTE_LENGTH;
+			this.releaseBuffer();
+			this.storage.setBytes(this.currentLocation / BYTE_LENGTH, data, 0, wholeBytes);
+			this.currentLocation += wholeBytes * BYTE_LENGTH;
+			if (bitLength % BYTE_LENGTH > 0)
+			{
+				this.appendBits((data[wholeBytes] & MAX_BYTE) >>> (BYTE_LENGTH - bitLength % BYTE_LENGTH), bitLength % BYTE_LENGTH);
+			}
+			return;
+		}
+		int i = 0;
+		for (int words = bitLength / WORD_LENGTH; words > 0; words--)
+		{
+			long word = 0L;
+			for (int end = i + (WORD_LENGTH / BYTE_LENGTH); i < end; i++)
+			{
+				word = (word << BYTE_LENGTH) | (data[i] & MAX_BYTE);
+			}
+			this.appendBits(word, WORD_LENGTH);
+		}
+		int bitsRemaining = bitLength % WORD_LENGTH;
+		for (; bitsRemaining >= BYTE_LENGTH; bitsRemaining -= BYTE_LENGTH)
+		{
+			this.appendBits(data[i++], BYTE_LENGTH);
+		}
+		if (bitsRemaining > 0)
+		{
+			this.appendBits((data[i] & MAX_BYTE) >>> (BYTE_LENGTH - bitsRemaining), bitsRemaining);
+		}
+	}
+	
+	/**
+	 * Appends a number of 0s without checking the range
+	 * @param bits	The number of 0s to append
+	 */
+	private void appendZeros(int bits)
+	{
+		for (; bits > 0; bits -= WORD_LENGTH)
+		{
+			this.appendBits(0L, Math.min(bits, WORD_LENGTH));
+		}
 	}
 	
 	/**
-	 * Generally for byte structures - passes in the first X bits of a byte
-	 * @param data
-	 * @param bitLength
+	 * Appends an Elias gamma code for a positive value after checking the range
+	 * @param value	The value to append, 1 or more
 	 */
-	private void appendByteLeft(byte data, int bitLength)
+	private void appendGamma(long value)
 	{
-		for (int i = 1; i <= bitLength; i++)
+		int bits = WORD_LENGTH - Long.numberOfLeadingZeros(value);
+		checkRange(2 * bits - 1);
+		this.appendGammaBits(value, bits);
+	}
+	
+	/**
+	 * Appends the Elias gamma code for a positive value once the range has been checked. Codes of up to 64 bits go out
+	 * in a single append.
+	 * @param value	The value to append, 1 or more
+	 * @param bits	The number of significant bits in the value
+	 */
+	private void appendGammaBits(long value, int bits)
+	{
+		if (2 * bits - 1 <= WORD_LENGTH)
 		{
-			coreData.set(currentLocation, ((data >>> (BYTE_LENGTH - i)) % 2) == 1);
-			currentLocation++;
+			this.appendBits(value, 2 * bits - 1);
+			return;
 		}
+		this.appendBits(0L, bits - 1);
+		this.appendBits(value, bits);
+	}
+	
+	/**
+	 * Packs fixed width integers into the storage. Values are gathered into a local word, and each word is written to the
+	 * storage once it is full, so only the words at either end of the range are read back and merged.
+	 * @param data		The integers to pack
+	 * @param offset	The offset of the first value in the array
+	 * @param count		The number of values to pack
+	 * @param bitWidth	The number of bits per value, from 1 to 32
+	 * @param startPos	The position to pack from
+	 */
+	private void pack(int[] data, int offset, int count, int bitWidth, int startPos)
+	{
+		if (count == 0) return;
+		this.releaseBuffer();
+		BitStorage words = this.storage;
+		long mask = -1L >>> (WORD_LENGTH - bitWidth);
+		int index = startPos >>> 6;
+		int used = startPos & (WORD_LENGTH - 1);
+		long word = used == 0 ? 0L : words.getWord(index) & ~(-1L >>> used);
+		for (int end = offset + count; offset < end; offset++)
+		{
+			long value = data[offset] & mask;
+			used += bitWidth;
+			if (used < WORD_LENGTH)
+			{
+				word |= value << (WORD_LENGTH - used);
+			}
+			else
+			{
+				used -= WORD_LENGTH;
+				words.setWord(index++, word | (value >>> used));
+				word = used == 0 ? 0L : value << (WORD_LENGTH - used);
+			}
+		}
+		if (used > 0)
+		{
+			words.setWord(index, (words.getWord(index) & (-1L >>> used)) | word);
+		}
+	}
+	
+	/**
+	 * Packs fixed width longs into the storage, as {@link #pack(int[], int, int, int, int)} does for integers
+	 * @param data		The longs to pack
+	 * @param offset	The offset of the first value in the array
+	 * @param count		The number of values to pack
+	 * @param bitWidth	The number of bits per value, from 1 to 64
+	 * @param startPos	The position to pack from
+	 */
+	private void pack(long[] data, int offset, int count, int bitWidth, int startPos)
+	{
+		if (count == 0) return;
+		this.releaseBuffer();
+		BitStorage words = this.storage;
+		long mask = -1L >>> (WORD_LENGTH - bitWidth);
+		int index = startPos >>> 6;
+		int used = startPos & (WORD_LENGTH - 1);
+		long word = used == 0 ? 0L : words.getWord(index) & ~(-1L >>> used);
+		for (int end = offset + count; offset < end; offset++)
+		{
+			long value = data[offset] & mask;
+			used += bitWidth;
+			if (used < WORD_LENGTH)
+			{
+				word |= value << (WORD_LENGTH - used);
+			}
+			else
+			{
+				used -= WORD_LENGTH;
+				words.setWord(index++, word | (value >>> used));
+				word = used == 0 ? 0L : value << (WORD_LENGTH - used);
+			}
+		}
+		if (used > 0)
+		{
+			words.setWord(index, (words.getWord(index) & (-1L >>> used)) | word);
+		}
+	}
+	
+	/**
+	 * Checks an array range and returns the number of bits it packs into
+	 * @param arrayLength	The length of the array
+	 * @param offset		The offset of the first value
+	 * @param count			The number of values
+	 * @param bitWidth		The number of bits per value
+	 * @return	The number of bits
+	 */
+	private static int packedLength(int arrayLength, int offset, int count, int bitWidth)
+	{
+		if (offset < 0 || count < 0 || offset + count > arrayLength || offset + count < 0) throw new IndexOutOfBoundsException("Error, "
+				+ count + " values from offset " + offset + " do not fit in an array of length: " + arrayLength);
+		long bits = (long) count * bitWidth;
+		if (bits > Integer.MAX_VALUE) throw new IndexOutOfBoundsException("Error, " + bits + " bits will not fit in a BitStream");
+		return (int) bits;
+	}
+	
+	/**
+	 * Sets the first bits of a byte array. Whole bytes at a byte aligned position are copied into the storage in bulk,
+	 * and otherwise the bytes are packed and set a word at a time.
+	 * @param data		The data to set
+	 * @param bitLength	The number of bits to set
+	 * @param startPos	Offset from where to start writing
+	 */
+	private void setByteArray(byte[] data, int bitLength, int startPos)
+	{
+		this.releaseBuffer();
+		if (startPos % BYTE_LENGTH == 0)
+		{
+			int wholeBytes = bitLength / BYTE_LENGTH;
+			this.storage.setBytes(startPos / BYTE_LENGTH, data, 0, wholeBytes);
+			if (bitLength % BYTE_LENGTH > 0)
+			{
+				int remainder = bitLength % BYTE_LENGTH;
+				this.setBits(startPos + wholeBytes * BYTE_LENGTH, remainder, (data[wholeBytes] & MAX_BYTE) >>> (BYTE_LENGTH - remainder));
+			}
+			return;
+		}
+		int i = 0;
+		for (int words = bitLength / WORD_LENGTH; words > 0; words--)
+		{
+			long word = 0L;
+			for (int end = i + (WORD_LENGTH / BYTE_LENGTH); i < end; i++)
+			{
+				word = (word << BYTE_LENGTH) | (data[i] & MAX_BYTE);
+			}
+			this.setBits(startPos, WORD_LENGTH, word);
+			startPos += WORD_LENGTH;
+		}
+		int bitsRemaining = bitLength % WORD_LENGTH;
+		for (; bitsRemaining >= BYTE_LENGTH; bitsRemaining -= BYTE_LENGTH)
+		{
+			this.setBits(startPos, BYTE_LENGTH, data[i++]);
+			startPos += BYTE_LENGTH;
+		}
+		if (bitsRemaining > 0)
+		{
+			this.setBits(startPos, bitsRemaining, (data[i] & MAX_BYTE) >>> (BYTE_LENGTH - bitsRemaining));
+		}
+	}
+	
+	/**
+	 * Appends a single bit to the BitStream
+	 * @param data	True to append a 1, false to append a 0
+	 */
+	public void appendBit(boolean data)
+	{
+		checkRange(1);
+		this.appendBits(data ? 1L : 0L, 1);
+	}
+	
+	/**
+	 * Appends the first bits of a byte to the BitStream
+	 * @param data		The data to append
+	 * @param bitLength	The amount of bits to append, taken from the most significant end
+	 */
+	public void appendByte(byte data, int bitLength)
+	{
+		if (bitLength < 1 || bitLength > BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a byte");
+		checkRange(bitLength);
+		this.appendBits((data & MAX_BYTE) >>> (BYTE_LENGTH - bitLength), bitLength);
 	}
 	
 	/**
-	 * Generally for primitives - passes in X bits, where the Xth bit is always the rightmost bit.
-	 * @param data
-	 * @param bitLength
+	 * Appends the low bits of an integer to the BitStream
+	 * @param data		The data to append
+	 * @param bitLength	The amount of bits to append
+	 */
+	public void appendInt(int data, int bitLength)
+	{
+		if (bitLength < 1 || bitLength > BYTE_LENGTH*4) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for an integer");
+		checkRange(bitLength);
+		this.appendBits(data, bitLength);
+	}
+	
+	/**
+	 * Appends the low bits of a long to the BitStream
+	 * @param data		The data to append
+	 * @param bitLength	The amount of bits to append
 	 */
-	private void appendByteRight(byte data, int bitLength)
+	public void appendLong(long data, int bitLength)
 	{
-		for (int i = 1; i <= bitLength; i++)
+		if (bitLength < 1 || bitLength > BYTE_LENGTH*8) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a long");
+		checkRange(bitLength);
+		this.appendBits(data, bitLength);
+	}
+	
+	/**
+	 * Appends a char to the BitStream, using 16 bits
+	 * @param data	The data to append
+	 */
+	public void appendChar(char data)
+	{
+		checkRange(2 * BYTE_LENGTH);
+		this.appendBits(data, 2 * BYTE_LENGTH);
+	}
+	
+	/**
+	 * Appends a double to the BitStream, using its 64 bit IEEE 754 form
+	 * @param data	The data to append
+	 */
+	public void appendDouble(double data)
+	{
+		checkRange(8 * BYTE_LENGTH);
+		this.appendBits(Double.doubleToRawLongBits(data), 8 * BYTE_LENGTH);
+	}
+	
+	/**
+	 * Appends a float to the BitStream, using its 32 bit IEEE 754 form
+	 * @param data	The data to append
+	 */
+	public void appendFloat(float data)
+	{
+		checkRange(4 * BYTE_LENGTH);
+		this.appendBits(Float.floatToRawIntBits(data), 4 * BYTE_LENGTH);
+	}
+	
+	/**
+	 * Appends an unsigned Exp-Golomb code. The value plus one is written in n + 1 bits, after n 0s.
+	 * @param value	The value to append, from 0 to Long.MAX_VALUE - 1
+	 */
+	public void appendUnsignedExpGolomb(long value)
+	{
+		if (value < 0 || value == Long.MAX_VALUE) throw new IllegalArgumentException("Error, value: " + value
+				+ " is out of range for an unsigned Exp-Golomb code");
+		this.appendGamma(value + 1);
+	}
+	
+	/**
+	 * Appends a signed Exp-Golomb code. Positive values k are coded as 2k - 1 and the rest as -2k, as in H.264.
+	 * @param value	The value to append, with a magnitude of at most 2^62 - 1
+	 */
+	public void appendSignedExpGolomb(long value)
+	{
+		if (value > (Long.MAX_VALUE >>> 1) || value < -(Long.MAX_VALUE >>> 1)) throw new IllegalArgumentException("Error, value: "
+				+ value + " is out of range for a signed Exp-Golomb code");
+		this.appendGamma(value > 0 ? 2 * value : 1 - 2 * value);
+	}
+	
+	/**
+	 * Appends an Elias gamma code. The value is written in n + 1 bits, after n 0s.
+	 * @param value	The value to append, from 1 to Long.MAX_VALUE
+	 */
+	public void appendEliasGamma(long value)
+	{
+		if (value < 1) throw new IllegalArgumentException("Error, value: " + value + " is out of range for an Elias gamma code");
+		this.appendGamma(value);
+	}
+	
+	/**
+	 * Appends an Elias delta code. The number of bits in the value is written as an Elias gamma code, followed by the
+	 * value without its leading 1.
+	 * @param value	The value to append, from 1 to Long.MAX_VALUE
+	 */
+	public void appendEliasDelta(long value)
+	{
+		if (value < 1) throw new IllegalArgumentException("Error, value: " + value + " is out of range for an Elias delta code");
+		int bits = WORD_LENGTH - Long.numberOfLeadingZeros(value);
+		int lengthBits = Integer.SIZE - Integer.numberOfLeadingZeros(bits);
+		checkRange(2 * lengthBits - 1 + bits - 1);
+		this.appendGammaBits(bits, lengthBits);
+		if (bits > 1)
 		{
-			coreData.set(currentLocation, ((data >>> (bitLength - i)) % 2) == 1);
-			currentLocation++;
+			this.appendBits(value, bits - 1);
 		}
 	}
 	
 	/**
-	 * Generally for byte structures - passes in the first X bits of a byte
-	 * @param data
-	 * @param bitLength
-	 * @param startPos		Offset from where to start writing
+	 * Appends a Golomb-Rice code. The value shifted right by k is written in unary as that many 0s and a 1, followed by
+	 * the low k bits of the value.
+	 * @param value	The value to append, 0 or more
+	 * @param k		The Rice parameter, from 0 to 63
+	 */
+	public void appendRice(long value, int k)
+	{
+		if (k < 0 || k >= WORD_LENGTH) throw new IllegalArgumentException("Error, k: " + k + " is out of range for a Rice code");
+		if (value < 0) throw new IllegalArgumentException("Error, value: " + value + " is out of range for a Rice code");
+		long quotient = value >>> k;
+		if (quotient > Integer.MAX_VALUE - WORD_LENGTH - k) throw new IllegalArgumentException("Error, value: " + value
+				+ " is too large to Rice code with k: " + k);
+		checkRange((int) quotient + 1 + k);
+		this.appendZeros((int) quotient);
+		this.appendBits((1L << k) | (value & ((1L << k) - 1)), k + 1);
+	}
+	
+	/**
+	 * Appends an unsigned LEB128 varint. The value is split into 7 bit groups, lowest first, and each group is written as
+	 * a byte whose top bit is set if more groups follow.
+	 * @param value	The value to append, taken as unsigned
 	 */
-	private void setByteLeft(byte data, int bitLength, int startPos)
+	public void appendUnsignedLEB128(long value)
 	{
-		for (int i = 1; i <= bitLength; i++)
+		int groups = Math.max(1, (WORD_LENGTH - Long.numberOfLeadingZeros(value) + 6) / 7);
+		checkRange(groups * BYTE_LENGTH);
+		for (; groups > 1; groups--)
 		{
-			coreData.set(startPos, ((data >>> (BYTE_LENGTH - i)) % 2) == 1);
-			startPos++;
+			this.appendBits((value & 0x7F) | 0x80, BYTE_LENGTH);
+			value >>>= 7;
 		}
+		this.appendBits(value, BYTE_LENGTH);
 	}
 	
 	/**
-	 * Generally for primitives - passes in X bits, where the Xth bit is always the rightmost bit.
-	 * @param data
-	 * @param bitLength
-	 * @param startPos		Offset from where to start writing
+	 * Appends a signed LEB128 varint. As with the unsigned form, but the last group written carries the sign in its
+	 * second bit.
+	 * @param value	The value to append
 	 */
-	private void setByteRight(byte data, int bitLength, int startPos)
+	public void appendSignedLEB128(long value)
 	{
-		for (int i = 1; i <= bitLength; i++)
+		int groups = (WORD_LENGTH - Long.numberOfLeadingZeros(value ^ (value >> 63)) + 7) / 7;
+		checkRange(groups * BYTE_LENGTH);
+		for (; groups > 1; groups--)
 		{
-			coreData.set(startPos, ((data >>> (bitLength - i)) % 2) == 1);
-			startPos++;
+			this.appendBits((value & 0x7F) | 0x80, BYTE_LENGTH);
+			value >>= 7;
 		}
+		this.appendBits(value & 0x7F, BYTE_LENGTH);
+	}
+	
+	/**
+	 * Appends integers to the BitStream, packed using the low bitWidth bits of each
+	 * @param data		The array holding the integers
+	 * @param offset	The offset of the first integer in the array
+	 * @param count		The number of integers to append
+	 * @param bitWidth	The number of bits to use for each integer, from 1 to 32
+	 */
+	public void appendInts(int[] data, int offset, int count, int bitWidth)
+	{
+		if (bitWidth < 1 || bitWidth > BYTE_LENGTH*4) throw new IllegalArgumentException("Error, bitLength: " + bitWidth + " is out of range for an integer");
+		int bits = packedLength(data.length, offset, count, bitWidth);
+		checkRange(bits);
+		this.pack(data, offset, count, bitWidth, this.currentLocation);
+		this.currentLocation += bits;
+	}
+	
+	/**
+	 * Appends longs to the BitStream, packed using the low bitWidth bits of each
+	 * @param data		The array holding the longs
+	 * @param offset	The offset of the first long in the array
+	 * @param count		The number of longs to append
+	 * @param bitWidth	The number of bits to use for each long, from 1 to 64
+	 */
+	public void appendLongs(long[] data, int offset, int count, int bitWidth)
+	{
+		if (bitWidth < 1 || bitWidth > BYTE_LENGTH*8) throw new IllegalArgumentException("Error, bitLength: " + bitWidth + " is out of range for a long");
+		int bits = packedLength(data.length, offset, count, bitWidth);
+		checkRange(bits);
+		this.pack(data, offset, count, bitWidth, this.currentLocation);
+		this.currentLocation += bits;
 	}
 	
 	/**
@@ -119,10 +614,7 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void append(Boolean data)
 	{
-		checkRange(1);
-		Byte b = 0;
-		if (data != null && data == true) b = 1;
-		this.appendByteRight(b, 1);
+		this.appendBit(data != null && data);
 	}
 	
 	/**
@@ -132,10 +624,7 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void append(Byte data, int bitLength)
 	{
-		checkRange(bitLength);
-		if (data == null) data = 0;
-		if (bitLength < 1 || bitLength > BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a byte");
-		this.appendByteLeft(data, bitLength);
+		this.appendByte(data == null ? 0 : data, bitLength);
 	}
 	
 	/**
@@ -145,12 +634,9 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void append(byte[] data, int bitLength)
 	{
-		checkRange(bitLength);
 		if (bitLength < 1 || bitLength > (BYTE_LENGTH * data.length)) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a byte array of length: " + data.length);
-		for (int i = 1; i <= data.length; i++)
-		{
-			this.appendByteLeft(data[(data.length - i)], bitLength);
-		}
+		checkRange(bitLength);
+		this.appendByteArray(data, bitLength);
 	}
 	
 	/**
@@ -160,12 +646,20 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void append(Byte[] data, int bitLength)
 	{
-		checkRange(bitLength);
 		if (data == null) data = new Byte[]{0};
 		if (bitLength < 1 || bitLength > (BYTE_LENGTH * data.length)) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a byte array of length: " + data.length);
-		for (int i = 1; i <= data.length; i++)
+		checkRange(bitLength);
+		int i = 0;
+		int bitsRemaining = bitLength;
+		for (; bitsRemaining >= BYTE_LENGTH; bitsRemaining -= BYTE_LENGTH)
+		{
+			this.appendBits(data[i] == null ? 0 : data[i], BYTE_LENGTH);
+			i++;
+		}
+		if (bitsRemaining > 0)
 		{
-			this.appendByteLeft(data[(data.length - i)], bitLength);
+			long last = data[i] == null ? 0 : (data[i] & MAX_BYTE) >>> (BYTE_LENGTH - bitsRemaining);
+			this.appendBits(last, bitsRemaining);
 		}
 	}
 	
@@ -176,16 +670,7 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void append(Integer data, int bitLength)
 	{
-		checkRange(bitLength);
-		if (data == null) data = 0;
-		if (bitLength < 1 || bitLength > BYTE_LENGTH*4) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for an integer");
-		int bitsRemaining = bitLength;
-		while (bitsRemaining >= BYTE_LENGTH)
-		{
-			bitsRemaining =- BYTE_LENGTH;
-			this.appendByteRight((byte) ((data >>> bitsRemaining) & MAX_BYTE), BYTE_LENGTH);
-		}
-		this.appendByteRight((byte) (data & MAX_BYTE), bitLength % BYTE_LENGTH);
+		this.appendInt(data == null ? 0 : data, bitLength);
 	}
 	
 	/**
@@ -195,16 +680,7 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void append(Long data, int bitLength)
 	{
-		checkRange(bitLength);
-		if (data == null) data = 0L;
-		if (bitLength < 1 || bitLength > BYTE_LENGTH*8) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a long");
-		int bitsRemaining = bitLength;
-		while (bitsRemaining >= BYTE_LENGTH)
-		{
-			bitsRemaining =- BYTE_LENGTH;
-			this.appendByteRight((byte) ((data >>> bitsRemaining) & MAX_BYTE), BYTE_LENGTH);
-		}
-		this.appendByteRight((byte) (data & MAX_BYTE), bitLength % BYTE_LENGTH);
+		this.appendLong(data == null ? 0L : data, bitLength);
 	}
 	
 	/**
@@ -213,10 +689,25 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void append(Character data)
 	{
-		checkRange(2 * BYTE_LENGTH);
-		if (data == null) data = 0;
-		this.appendByteLeft((byte)(data.charValue() >>> 8), BYTE_LENGTH);
-		this.appendByteLeft((byte)data.charValue(), BYTE_LENGTH);
+		this.appendChar(data == null ? 0 : data);
+	}
+	
+	/**
+	 * Appends data to the BitStream
+	 * @param data	The data to append
+	 */
+	public void append(Double data)
+	{
+		this.appendDouble(data == null ? 0 : data);
+	}
+	
+	/**
+	 * Appends data to the BitStream
+	 * @param data	The data to append
+	 */
+	public void append(Float data)
+	{
+		this.appendFloat(data == null ? 0 : data);
 	}
 	
 	/**
@@ -225,9 +716,10 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void append(String data)
 	{
-		checkRange(data.getBytes().length);
 		if(data.length() < 1) throw new IllegalArgumentException("Error, the dataset is empty");
-		this.append(data.getBytes(), data.getBytes().length * BYTE_LENGTH);
+		byte[] bytes = data.getBytes();
+		checkRange(bytes.length * BYTE_LENGTH);
+		this.appendByteArray(bytes, bytes.length * BYTE_LENGTH);
 	}
 	
 	/**
@@ -236,11 +728,14 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void append(BitSet data)
 	{
-		checkRange(data.length());
 		if(data.length() < 1) throw new IllegalArgumentException("Error, the dataset is empty");
-		for (int i = 0; i < data.length(); i++)
+		int bitLength = data.length();
+		checkRange(bitLength);
+		long[] setWords = data.toLongArray();
+		for (int i = 0; i < setWords.length; i++)
 		{
-			this.append(data.get(i));
+			int chunk = Math.min(WORD_LENGTH, bitLength - i * WORD_LENGTH);
+			this.appendBits(Long.reverse(setWords[i]) >>> (WORD_LENGTH - chunk), chunk);
 		}
 	}
 	
@@ -251,11 +746,131 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void append(BitStream data, int bitLength)
 	{
-		checkRange(bitLength);
 		if (bitLength < 1 || bitLength > data.getDataSize()) throw new IllegalArgumentException("Error, bitLength: " + bitLength +
 				" is out of range for a BitStream of length " + data.getDataSize());
-		BitStreamReader bsr = new BitStreamReader(data);
-		this.append(bsr.readBytes(bitLength), bitLength);
+		checkRange(bitLength);
+		this.copyFrom(data, 0, this.currentLocation, bitLength);
+		this.currentLocation += bitLength;
+	}
+	
+	/**
+	 * Sets a single bit in the BitStream
+	 * @param data		True to set a 1, false to set a 0
+	 * @param startPos	The position to set
+	 */
+	public void setBit(boolean data, int startPos)
+	{
+		checkRange(1, startPos);
+		this.releaseBuffer();
+		this.setBits(startPos, 1, data ? 1L : 0L);
+	}
+	
+	/**
+	 * Sets the first bits of a byte in the BitStream
+	 * @param data		The data to set
+	 * @param bitLength	The amount of bits to set, taken from the most significant end
+	 * @param startPos	The starting position to set from
+	 */
+	public void setByte(byte data, int bitLength, int startPos)
+	{
+		if (bitLength < 1 || bitLength > BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a byte");
+		checkRange(bitLength, startPos);
+		this.releaseBuffer();
+		this.setBits(startPos, bitLength, (data & MAX_BYTE) >>> (BYTE_LENGTH - bitLength));
+	}
+	
+	/**
+	 * Sets the low bits of an integer in the BitStream
+	 * @param data		The data to set
+	 * @param bitLength	The amount of bits to set
+	 * @param startPos	The starting position to set from
+	 */
+	public void setInt(int data, int bitLength, int startPos)
+	{
+		if (bitLength < 1 || bitLength > BYTE_LENGTH*4) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for an integer");
+		checkRange(bitLength, startPos);
+		this.releaseBuffer();
+		this.setBits(startPos, bitLength, data);
+	}
+	
+	/**
+	 * Sets the low bits of a long in the BitStream
+	 * @param data		The data to set
+	 * @param bitLength	The amount of bits to set
+	 * @param startPos	The starting position to set from
+	 */
+	public void setLong(long data, int bitLength, int startPos)
+	{
+		if (bitLength < 1 || bitLength > BYTE_LENGTH*8) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a long");
+		checkRange(bitLength, startPos);
+		this.releaseBuffer();
+		this.setBits(startPos, bitLength, data);
+	}
+	
+	/**
+	 * Sets a char in the BitStream, using 16 bits
+	 * @param data		The data to set
+	 * @param startPos	The starting position to set from
+	 */
+	public void setChar(char data, int startPos)
+	{
+		checkRange(2 * BYTE_LENGTH, startPos);
+		this.releaseBuffer();
+		this.setBits(startPos, 2 * BYTE_LENGTH, data);
+	}
+	
+	/**
+	 * Sets a double in the BitStream, using its 64 bit IEEE 754 form
+	 * @param data		The data to set
+	 * @param startPos	The starting position to set from
+	 */
+	public void setDouble(double data, int startPos)
+	{
+		checkRange(8 * BYTE_LENGTH, startPos);
+		this.releaseBuffer();
+		this.setBits(startPos, 8 * BYTE_LENGTH, Double.doubleToRawLongBits(data));
+	}
+	
+	/**
+	 * Sets a float in the BitStream, using its 32 bit IEEE 754 form
+	 * @param data		The data to set
+	 * @param startPos	The starting position to set from
+	 */
+	public void setFloat(float data, int startPos)
+	{
+		checkRange(4 * BYTE_LENGTH, startPos);
+		this.releaseBuffer();
+		this.setBits(startPos, 4 * BYTE_LENGTH, Float.floatToRawIntBits(data));
+	}
+	
+	/**
+	 * Sets integers in the BitStream, packed using the low bitWidth bits of each
+	 * @param data		The array holding the integers
+	 * @param offset	The offset of the first integer in the array
+	 * @param count		The number of integers to set
+	 * @param bitWidth	The number of bits to use for each integer, from 1 to 32
+	 * @param startPos	The starting position to set from
+	 */
+	public void setInts(int[] data, int offset, int count, int bitWidth, int startPos)
+	{
+		if (bitWidth < 1 || bitWidth > BYTE_LENGTH*4) throw new IllegalArgumentException("Error, bitLength: " + bitWidth + " is out of range for an integer");
+		checkRange(packedLength(data.length, offset, count, bitWidth), startPos);
+		this.pack(data, offset, count, bitWidth, startPos);
+	}
+	
+	/**
+	 * Sets longs in the BitStream, packed using the low bitWidth bits of each
+	 * @param data		The array holding the longs
+	 * @param offset	The offset of the first long in the array
+	 * @param count		The number of longs to set
+	 * @param bitWidth	The number of bits to use for each long, from 1 to 64
+	 * @param startPos	The starting position to set from
+	 */
+	public void setLongs(long[] data, int offset, int count, int bitWidth, int startPos)
+	{
+		if (bitWidth < 1 || bitWidth > BYTE_LENGTH*8) throw new IllegalArgumentException("Error, bitLength: " + bitWidth + " is out of range for a long");
+		checkRange(packedLength(data.length, offset, count, bitWidth), startPos);
+		this.pack(data, offset, count, bitWidth, startPos);
 	}
 	
 	/**
@@ -265,10 +880,7 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void set(Boolean data, int startPos)
 	{
-		checkRange(1, startPos);
-		Byte b = 0;
-		if (data != null && data == true) b = 1;
-		this.setByteRight(b, 1, startPos);
+		this.setBit(data != null && data, startPos);
 	}
 	
 	/**
@@ -279,10 +891,7 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void set(Byte data, int bitLength, int startPos)
 	{
-		checkRange(bitLength, startPos);
-		if (data == null) data = 0;
-		if (bitLength < 1 || bitLength > BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a byte");
-		this.setByteLeft(data, bitLength, startPos);
+		this.setByte(data == null ? 0 : data, bitLength, startPos);
 	}
 	
 	/**
@@ -293,18 +902,9 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void set(byte[] data, int bitLength, int startPos)
 	{
-		checkRange(bitLength, startPos);
 		if (bitLength < 1 || bitLength > (BYTE_LENGTH * data.length)) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a byte array of length: " + data.length);
-		
-		int bitsRemaining = bitLength;
-		int counter = 0;
-		while (bitsRemaining >= BYTE_LENGTH)
-		{
-			bitsRemaining =- BYTE_LENGTH;
-			this.setByteLeft((data[counter]), BYTE_LENGTH, startPos + counter * BYTE_LENGTH);
-			counter++;
-		}
-		this.setByteLeft(data[counter], bitLength % BYTE_LENGTH, startPos + counter * BYTE_LENGTH);
+		checkRange(bitLength, startPos);
+		this.setByteArray(data, bitLength, startPos);
 	}
 	
 	/**
@@ -315,19 +915,22 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void set(Byte[] data, int bitLength, int startPos)
 	{
-		checkRange(bitLength, startPos);
 		if (data == null) data = new Byte[]{0};
 		if (bitLength < 1 || bitLength > (BYTE_LENGTH * data.length)) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a byte array of length: " + data.length);
-		
+		checkRange(bitLength, startPos);
+		this.releaseBuffer();
+		int i = 0;
 		int bitsRemaining = bitLength;
-		int counter = 0;
-		while (bitsRemaining >= BYTE_LENGTH)
+		for (; bitsRemaining >= BYTE_LENGTH; bitsRemaining -= BYTE_LENGTH)
+		{
+			this.setBits(startPos + i * BYTE_LENGTH, BYTE_LENGTH, data[i] == null ? 0 : data[i]);
+			i++;
+		}
+		if (bitsRemaining > 0)
 		{
-			bitsRemaining =- BYTE_LENGTH;
-			this.setByteLeft((data[counter]), BYTE_LENGTH, startPos + counter * BYTE_LENGTH);
-			counter++;
+			long last = data[i] == null ? 0 : (data[i] & MAX_BYTE) >>> (BYTE_LENGTH - bitsRemaining);
+			this.setBits(startPos + i * BYTE_LENGTH, bitsRemaining, last);
 		}
-		this.setByteLeft(data[counter], bitLength % BYTE_LENGTH, startPos + counter * BYTE_LENGTH);
 	}
 	
 	/**
@@ -338,18 +941,7 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void set(Integer data, int bitLength, int startPos)
 	{
-		checkRange(bitLength, startPos);
-		if (data == null) data = 0;
-		if (bitLength < 1 || bitLength > BYTE_LENGTH*4) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for an integer");
-		int bitsRemaining = bitLength;
-		int counter = 0;
-		while (bitsRemaining >= BYTE_LENGTH)
-		{
-			bitsRemaining =- BYTE_LENGTH;
-			this.setByteRight((byte) ((data >>> bitsRemaining) & MAX_BYTE), BYTE_LENGTH, startPos + counter * BYTE_LENGTH);
-			counter++;
-		}
-		this.setByteRight((byte) (data & MAX_BYTE), bitLength % BYTE_LENGTH, startPos + counter * BYTE_LENGTH);
+		this.setInt(data == null ? 0 : data, bitLength, startPos);
 	}
 	
 	/**
@@ -360,18 +952,7 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void set(Long data, int bitLength, int startPos)
 	{
-		checkRange(bitLength, startPos);
-		if (data == null) data = 0L;
-		if (bitLength < 1 || bitLength > BYTE_LENGTH*8) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a long");
-		int bitsRemaining = bitLength;
-		int counter = 0;
-		while (bitsRemaining >= BYTE_LENGTH)
-		{
-			bitsRemaining =- BYTE_LENGTH;
-			this.setByteRight((byte) ((data >>> bitsRemaining) & MAX_BYTE), BYTE_LENGTH, startPos + counter * BYTE_LENGTH);
-			counter++;
-		}
-		this.setByteRight((byte) (data & MAX_BYTE), bitLength % BYTE_LENGTH, startPos + counter * BYTE_LENGTH);
+		this.setLong(data == null ? 0L : data, bitLength, startPos);
 	}
 	
 	/**
@@ -381,10 +962,27 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void set(Character data, int startPos)
 	{
-		checkRange(2 * BYTE_LENGTH, startPos);
-		if (data == null) data = 0;
-		this.setByteLeft((byte)(data.charValue() >>> 8), BYTE_LENGTH, startPos);
-		this.setByteLeft((byte)data.charValue(), BYTE_LENGTH, startPos + BYTE_LENGTH);
+		this.setChar(data == null ? 0 : data, startPos);
+	}
+	
+	/**
+	 * Sets data in the BitStream
+	 * @param data		The data to set
+	 * @param startPos	The starting position to set from
+	 */
+	public void set(Double data, int startPos)
+	{
+		this.setDouble(data == null ? 0 : data, startPos);
+	}
+	
+	/**
+	 * Sets data in the BitStream
+	 * @param data		The data to set
+	 * @param startPos	The starting position to set from
+	 */
+	public void set(Float data, int startPos)
+	{
+		this.setFloat(data == null ? 0 : data, startPos);
 	}
 	
 	/**
@@ -394,9 +992,10 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void set(String data, int startPos)
 	{
-		checkRange(data.getBytes().length, startPos);
 		if(data.length() < 1) throw new IllegalArgumentException("Error, the dataset is empty");
-		this.set(data.getBytes(), data.getBytes().length * BYTE_LENGTH, startPos);
+		byte[] bytes = data.getBytes();
+		checkRange(bytes.length * BYTE_LENGTH, startPos);
+		this.setByteArray(bytes, bytes.length * BYTE_LENGTH, startPos);
 	}
 	
 	/**
@@ -406,11 +1005,15 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void set(BitSet data, int startPos)
 	{
-		checkRange(data.length(), startPos);
 		if(data.length() < 1) throw new IllegalArgumentException("Error, the dataset is empty");
-		for (int i = 0; i < data.length(); i++)
+		int bitLength = data.length();
+		checkRange(bitLength, startPos);
+		this.releaseBuffer();
+		long[] setWords = data.toLongArray();
+		for (int i = 0; i < setWords.length; i++)
 		{
-			this.set(data.get(i), startPos + i * BYTE_LENGTH);
+			int chunk = Math.min(WORD_LENGTH, bitLength - i * WORD_LENGTH);
+			this.setBits(startPos + i * WORD_LENGTH, chunk, Long.reverse(setWords[i]) >>> (WORD_LENGTH - chunk));
 		}
 	}
 	
@@ -421,12 +1024,228 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void set(BitStream data, int bitLength, int startPos)
 	{
-		checkRange(bitLength, startPos);
 		if (bitLength < 1 || bitLength > data.getDataSize()) throw new IllegalArgumentException("Error, bitLength: " + bitLength +
 				" is out of range for a BitStream of length " + data.getDataSize());
-		BitStreamReader bsr = new BitStreamReader(data);
-		this.set(bsr.readBytes(bitLength), bitLength, startPos);
-
+		checkRange(bitLength, startPos);
+		this.copyFrom(data, 0, startPos, bitLength);
+	}
+	
+	/**
+	 * Copies a range of bits from one BitStream into a writer. Whole destination words are written at a time, each built
+	 * from at most two source words with a shift, so any source and destination alignment costs the same. No temporary
+	 * arrays are allocated, and the source and destination may share storage and overlap.
+	 * @param src		The stream to copy from
+	 * @param srcPos	The position in the source to copy from
+	 * @param dst		The writer to copy into
+	 * @param dstPos	The position in the destination to copy to
+	 * @param length	The number of bits to copy
+	 */
+	public static void copyBits(BitStream src, int srcPos, BitStreamWriter dst, int dstPos, int length)
+	{
+		if (length < 0) throw new IllegalArgumentException("Error, length: " + length + " is negative");
+		if (srcPos < 0 || srcPos + length > src.getDataSize()) throw new IndexOutOfBoundsException("Error, copying " + length
+				+ " bits from position " + srcPos + " will go out of bounds of a BitStream of length " + src.getDataSize());
+		dst.checkRange(length, dstPos);
+		dst.copyFrom(src, srcPos, dstPos, length);
+	}
+	
+	/**
+	 * ANDs a range of bits from a BitStream into this writer, leaving each destination bit set only where the source bit
+	 * is also set. Like {@link #copyBits(BitStream, int, BitStreamWriter, int, int)}, whole destination words are
+	 * combined at a time at any alignment, and the source may share this writer's storage and overlap the destination.
+	 * @param src		The stream to read from
+	 * @param srcPos	The position in the source to read from
+	 * @param dstPos	The position in this writer to combine into
+	 * @param length	The number of bits to combine
+	 */
+	public void and(BitStream src, int srcPos, int dstPos, int length)
+	{
+		this.combine(src, srcPos, dstPos, length, OP_AND);
+	}
+	
+	/**
+	 * ORs a range of bits from a BitStream into this writer, setting each destination bit whose source bit is set
+	 * @param src		The stream to read from
+	 * @param srcPos	The position in the source to read from
+	 * @param dstPos	The position in this writer to combine into
+	 * @param length	The number of bits to combine
+	 */
+	public void or(BitStream src, int srcPos, int dstPos, int length)
+	{
+		this.combine(src, srcPos, dstPos, length, OP_OR);
+	}
+	
+	/**
+	 * XORs a range of bits from a BitStream into this writer, flipping each destination bit whose source bit is set
+	 * @param src		The stream to read from
+	 * @param srcPos	The position in the source to read from
+	 * @param dstPos	The position in this writer to combine into
+	 * @param length	The number of bits to combine
+	 */
+	public void xor(BitStream src, int srcPos, int dstPos, int length)
+	{
+		this.combine(src, srcPos, dstPos, length, OP_XOR);
+	}
+	
+	/**
+	 * Clears each bit of a range of this writer whose bit in a BitStream is set
+	 * @param src		The stream to read the mask from
+	 * @param srcPos	The position in the source to read from
+	 * @param dstPos	The position in this writer to combine into
+	 * @param length	The number of bits to combine
+	 */
+	public void andNot(BitStream src, int srcPos, int dstPos, int length)
+	{
+		this.combine(src, srcPos, dstPos, length, OP_AND_NOT);
+	}
+	
+	/**
+	 * Flips every bit in a range of this writer, a whole word at a time
+	 * @param length	The number of bits to flip
+	 * @param startPos	The position to flip from
+	 */
+	public void not(int length, int startPos)
+	{
+		if (length < 0) throw new IllegalArgumentException("Error, length: " + length + " is negative");
+		checkRange(length, startPos);
+		this.releaseBuffer();
+		int done = Math.min(length, (WORD_LENGTH - (startPos & (WORD_LENGTH - 1))) & (WORD_LENGTH - 1));
+		if (done > 0)
+		{
+			this.setBits(startPos, done, ~this.getBits(startPos, done));
+		}
+		for (; length - done >= WORD_LENGTH; done += WORD_LENGTH)
+		{
+			int index = (startPos + done) >>> 6;
+			this.storage.setWord(index, ~this.storage.getWord(index));
+		}
+		if (length > done)
+		{
+			this.setBits(startPos + done, length - done, ~this.getBits(startPos + done, length - done));
+		}
+	}
+	
+	/**
+	 * Checks a range and combines a BitStream into this writer over it
+	 * @param src		The stream to read from
+	 * @param srcPos	The position in the source to read from
+	 * @param dstPos	The position in this writer to combine into
+	 * @param length	The number of bits to combine
+	 * @param op		The operation to combine with
+	 */
+	private void combine(BitStream src, int srcPos, int dstPos, int length, int op)
+	{
+		if (length < 0) throw new IllegalArgumentException("Error, length: " + length + " is negative");
+		if (srcPos < 0 || srcPos + length > src.getDataSize()) throw new IndexOutOfBoundsException("Error, reading " + length
+				+ " bits from position " + srcPos + " will go out of bounds of a BitStream of length " + src.getDataSize());
+		checkRange(length, dstPos);
+		this.combineFrom(src, srcPos, dstPos, length, op);
+	}
+	
+	/**
+	 * Copies a range of bits from a BitStream into this writer, once the range has been checked
+	 * @param src		The stream to copy from
+	 * @param srcPos	The position in the source to copy from
+	 * @param dstPos	The position to copy to
+	 * @param length	The number of bits to copy
+	 */
+	private void copyFrom(BitStream src, int srcPos, int dstPos, int length)
+	{
+		this.combineFrom(src, srcPos, dstPos, length, OP_COPY);
+	}
+	
+	/**
+	 * Combines a range of bits from a BitStream into this writer, once the range has been checked. The partial words at
+	 * either end are combined with setBits, and the whole words between them directly in the storage, each from at most
+	 * two source words. When the source shares this writer's storage, directly or through a slice, and lies before the
+	 * destination, the work runs backwards so no source bit is overwritten before it is read.
+	 * @param src		The stream to read from
+	 * @param srcPos	The position in the source to read from
+	 * @param dstPos	The position to combine into
+	 * @param length	The number of bits to combine
+	 * @param op		The operation to combine with
+	 */
+	private void combineFrom(BitStream src, int srcPos, int dstPos, int length, int op)
+	{
+		if (length == 0) return;
+		src.sync();
+		this.releaseBuffer();
+		long srcStart = OffsetBitStorage.offsetOf(src.storage) + srcPos;
+		long dstStart = OffsetBitStorage.offsetOf(this.storage) + dstPos;
+		if (OffsetBitStorage.rootOf(src.storage) == OffsetBitStorage.rootOf(this.storage) && dstStart > srcStart
+				&& dstStart < srcStart + length)
+		{
+			int remaining = length;
+			int tail = Math.min(length, (dstPos + length) & (WORD_LENGTH - 1));
+			if (tail > 0)
+			{
+				remaining -= tail;
+				this.combineBits(src, srcPos + remaining, dstPos + remaining, tail, op);
+			}
+			while (remaining >= WORD_LENGTH)
+			{
+				remaining -= WORD_LENGTH;
+				int index = (dstPos + remaining) >>> 6;
+				this.storage.setWord(index, apply(op, this.storage.getWord(index), src.getBits(srcPos + remaining, WORD_LENGTH)));
+			}
+			if (remaining > 0)
+			{
+				this.combineBits(src, srcPos, dstPos, remaining, op);
+			}
+			return;
+		}
+		int done = Math.min(length, (WORD_LENGTH - (dstPos & (WORD_LENGTH - 1))) & (WORD_LENGTH - 1));
+		if (done > 0)
+		{
+			this.combineBits(src, srcPos, dstPos, done, op);
+		}
+		for (; length - done >= WORD_LENGTH; done += WORD_LENGTH)
+		{
+			int index = (dstPos + done) >>> 6;
+			this.storage.setWord(index, apply(op, this.storage.getWord(index), src.getBits(srcPos + done, WORD_LENGTH)));
+		}
+		if (length > done)
+		{
+			this.combineBits(src, srcPos + done, dstPos + done, length - done, op);
+		}
+	}
+	
+	/**
+	 * Combines up to 64 bits from a BitStream into this writer
+	 * @param src		The stream to read from
+	 * @param srcPos	The position in the source to read from
+	 * @param dstPos	The position to combine into
+	 * @param length	The number of bits to combine, from 1 to 64
+	 * @param op		The operation to combine with
+	 */
+	private void combineBits(BitStream src, int srcPos, int dstPos, int length, int op)
+	{
+		long bits = src.getBits(srcPos, length);
+		this.setBits(dstPos, length, op == OP_COPY ? bits : apply(op, this.getBits(dstPos, length), bits));
+	}
+	
+	/**
+	 * Applies a bitwise operation to a word
+	 * @param op			The operation
+	 * @param destination	The word in this writer
+	 * @param source		The word from the source
+	 * @return	The combined word
+	 */
+	private static long apply(int op, long destination, long source)
+	{
+		switch (op)
+		{
+			case OP_AND:
+				return destination & source;
+			case OP_OR:
+				return destination | source;
+			case OP_XOR:
+				return destination ^ source;
+			case OP_AND_NOT:
+				return destination & ~source;
+			default:
+				return source;
+		}
 	}
 
 	/**
@@ -435,10 +1254,8 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void pad(int bits)
 	{
-		for (int i = 0; i < bits; i++)
-		{
-			this.append(false);
-		}
+		checkRange(bits);
+		this.appendZeros(bits);
 	}
 	
 	/**
@@ -448,9 +1265,26 @@ public class BitStreamWriter extends BitStream
 	 */
 	public void clear(int bits, int startPos)
 	{
-		for (int i = 0; i < bits; i++)
+		checkRange(bits, startPos);
+		this.releaseBuffer();
+		for (; bits > 0; bits -= WORD_LENGTH)
 		{
-			this.set(false, startPos + i);
+			this.setBits(startPos, Math.min(bits, WORD_LENGTH), 0L);
+			startPos += WORD_LENGTH;
+		}
+	}
+	
+	/**
+	 * Writes the word held in the bit buffer through to the stream, so that readers sharing the data see every append.
+	 * Only the bits this writer appended are written; the rest of the word is left as it is in the storage.
+	 */
+	public void flush()
+	{
+		if (this.bitBufferIndex >= 0)
+		{
+			long word = this.bitBufferMask == -1L ? this.bitBuffer
+					: (this.storage.getWord(this.bitBufferIndex) & ~this.bitBufferMask) | this.bitBuffer;
+			this.storage.setWord(this.bitBufferIndex, word);
 		}
 	}
 	
@@ -478,7 +1312,69 @@ public class BitStreamWriter extends BitStream
 	 */
 	public BitStream getBitStream()
 	{
-		return new BitStream(this.coreData,this.dataSize);
+		this.flush();
+		return new BitStream(this.storage, this.dataSize);
+	}
+
+	/**
+	 * Returns whether the writer grows as data is written to it
+	 * @return
+	 */
+	public boolean isGrowable()
+	{
+		return this.growable;
+	}
+	
+	/**
+	 * Makes sure the writer can hold at least the given number of bits without growing again
+	 * @param bits	The number of bits to make room for
+	 */
+	public void ensureCapacity(int bits)
+	{
+		if (bits <= this.storage.getWordCount() * WORD_LENGTH) return;
+		if (!this.growable) throw new IllegalStateException("Error, the writer is fixed at " + this.dataSize + " bits and cannot hold " + bits);
+		int required = (bits + WORD_LENGTH - 1) / WORD_LENGTH;
+		int grown = this.storage.getWordCount() * 2;
+		this.storage = this.storage.copyOf(Math.max(required, Math.min(grown, MAX_WORDS)));
+	}
+	
+	/**
+	 * Shrinks the writer's storage to the size of the data held
+	 */
+	public void trimToSize()
+	{
+		int required = (this.dataSize + WORD_LENGTH - 1) / WORD_LENGTH;
+		if (required == this.storage.getWordCount()) return;
+		this.releaseBuffer();
+		this.storage = this.storage.copyOf(required);
+	}
+	
+	/**
+	 * Generates and returns a BitStream holding a copy of the current data, sized exactly to the data
+	 * @return
+	 */
+	public BitStream toBitStream()
+	{
+		this.flush();
+		return new BitStream(this.storage.copyOf((this.dataSize + WORD_LENGTH - 1) / WORD_LENGTH), this.dataSize);
+	}
+	
+	/**
+	 * Writes the bit buffer through to the stream
+	 */
+	@Override
+	protected void sync()
+	{
+		this.flush();
+	}
+	
+	/**
+	 * Writes the bit buffer through and empties it, ahead of a write made directly to the stream
+	 */
+	private void releaseBuffer()
+	{
+		this.flush();
+		this.bitBufferIndex = -1;
 	}
 
 	/**
@@ -487,6 +1383,11 @@ public class BitStreamWriter extends BitStream
 	 */
 	private void checkRange(int range)
 	{
+		if (this.growable)
+		{
+			this.extendTo(this.currentLocation + range);
+			return;
+		}
 		if (this.currentLocation + range > this.dataSize) throw new IndexOutOfBoundsException("Error, adding " + range + " to the "
 				+ "dataset will cause the BitStream to go out of bounds. There are " + (this.dataSize - this.currentLocation) + 
 				" bits remaining");
@@ -499,8 +1400,24 @@ public class BitStreamWriter extends BitStream
 	 */
 	private void checkRange(int range, int startPos)
 	{
+		if (this.growable)
+		{
+			this.extendTo(startPos + range);
+			return;
+		}
 		if (startPos + range > this.dataSize) throw new IndexOutOfBoundsException("Error, adding " + range + " to the "
 				+ "dataset will cause the BitStream to go out of bounds. There are " + (this.dataSize - startPos) + 
 				" bits remaining");
 	}
+	
+	/**
+	 * Grows a growable writer so that it holds everything up to the given position
+	 * @param end	The position just past the last bit to be written
+	 */
+	private void extendTo(int end)
+	{
+		if (end < 0) throw new IndexOutOfBoundsException("Error, the BitStream cannot grow beyond " + Integer.MAX_VALUE + " bits");
+		this.ensureCapacity(end);
+		if (end > this.dataSize) this.dataSize = end;
+	}
 }
@@ -0,0 +1,211 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Storage held in a ByteBuffer or byte array, read in place. Bytes are taken most significant bit first, so the first byte of the buffer
+ * holds the first eight bits of the stream. Whole words are read and written with the buffer's big-endian long accessors.
+ * <p>
+ * Storage over a direct buffer lives outside the heap. When the storage allocated the buffer itself, {@link #release()} frees
+ * it straight away rather than waiting for the garbage collector.
+ *
+ * @author AireL
+ */
+class ByteBufferBitStorage extends BitStorage
+{
+	private static final int WORD_BYTES = 8;
+	private static final int BYTE_LENGTH = 8;
+	private static final int MAX_BYTE = 0xFF;
+
+	/**
+	 * The stream bytes, indexed from 0 and big-endian
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * The number of bytes in the stream
+	 */
+	private int byteLength;
+
+	/**
+	 * The buffer this storage allocated and may free, or null if the buffer belongs to the caller
+	 */
+	private ByteBuffer allocated;
+
+	/**
+	 * Creates storage over the bytes between a buffer's position and limit. The buffer's content is shared, and its
+	 * position, limit and byte order are left untouched.
+	 * @param buffer	The buffer to read
+	 */
+	ByteBufferBitStorage(ByteBuffer buffer)
+	{
+		this.buffer = buffer.slice();
+		this.byteLength = this.buffer.remaining();
+	}
+
+	/**
+	 * Allocates new storage outside the heap
+	 * @param byteLength	The number of bytes to allocate, at most Integer.MAX_VALUE
+	 * @return	The storage
+	 */
+	static ByteBufferBitStorage allocateDirectBytes(long byteLength)
+	{
+		if (byteLength < 0 || byteLength > Integer.MAX_VALUE) throw new IllegalArgumentException("Error, " + byteLength
+				+ " bytes is out of range for a direct ByteBuffer");
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) byteLength);
+		ByteBufferBitStorage storage = new ByteBufferBitStorage(buffer);
+		storage.allocated = buffer;
+		return storage;
+	}
+
+	@Override
+	public long getWord(int index)
+	{
+		int pos = index * WORD_BYTES;
+		if (pos + WORD_BYTES <= this.byteLength) return this.buffer.getLong(pos);
+		checkIndex(pos);
+		long word = 0L;
+		for (int i = 0; i < WORD_BYTES; i++)
+		{
+			word <<= BYTE_LENGTH;
+			if (pos + i < this.byteLength) word |= this.buffer.get(pos + i) & MAX_BYTE;
+		}
+		return word;
+	}
+
+	@Override
+	public void setWord(int index, long word)
+	{
+		int pos = index * WORD_BYTES;
+		if (pos + WORD_BYTES <= this.byteLength)
+		{
+			this.buffer.putLong(pos, word);
+			return;
+		}
+		checkIndex(pos);
+		for (int i = 0; pos + i < this.byteLength; i++)
+		{
+			this.buffer.put(pos + i, (byte) (word >>> ((WORD_BYTES - 1 - i) * BYTE_LENGTH)));
+		}
+	}
+
+	/**
+	 * Checks that a word starts inside the storage, for the partial words that the buffer's own checks do not cover
+	 * @param pos	The byte position of the word
+	 */
+	private void checkIndex(int pos)
+	{
+		if (pos < 0 || pos >= this.byteLength) throw new IndexOutOfBoundsException("Error, word at byte " + pos
+				+ " is outside storage of " + this.byteLength + " bytes");
+	}
+
+	@Override
+	public int getWordCount()
+	{
+		return (this.byteLength + WORD_BYTES - 1) / WORD_BYTES;
+	}
+
+	@Override
+	public BitStorage copyOf(int wordCount)
+	{
+		if (this.buffer.isDirect())
+		{
+			ByteBufferBitStorage copy = allocateDirectBytes((long) wordCount * WORD_BYTES);
+			ByteBuffer source = this.buffer.duplicate();
+			source.limit(Math.min(this.byteLength, copy.byteLength));
+			copy.buffer.put(source);
+			copy.buffer.clear();
+			return copy;
+		}
+		long[] words = new long[wordCount];
+		int copied = Math.min(wordCount, this.getWordCount());
+		for (int i = 0; i < copied; i++)
+		{
+			words[i] = this.getWord(i);
+		}
+		return new LongArrayBitStorage(words);
+	}
+
+	@Override
+	public void getBytes(int bytePos, byte[] dest, int offset, int length)
+	{
+		ByteBuffer view = this.buffer.duplicate();
+		view.position(bytePos);
+		view.get(dest, offset, length);
+	}
+
+	@Override
+	public void setBytes(int bytePos, byte[] src, int offset, int length)
+	{
+		ByteBuffer view = this.buffer.duplicate();
+		view.position(bytePos);
+		view.put(src, offset, length);
+	}
+
+	@Override
+	public void transferTo(WritableByteChannel channel, int byteLength) throws IOException
+	{
+		if (byteLength > this.byteLength) throw new IndexOutOfBoundsException("Error, cannot transfer " + byteLength
+				+ " bytes from storage of " + this.byteLength + " bytes");
+		ByteBuffer view = this.buffer.duplicate();
+		view.limit(byteLength);
+		while (view.hasRemaining())
+		{
+			channel.write(view);
+		}
+	}
+
+	/**
+	 * Frees the buffer if this storage allocated it. The storage holds no bytes afterwards, so any further access fails
+	 * with an IndexOutOfBoundsException rather than touching freed memory.
+	 */
+	@Override
+	public void release()
+	{
+		ByteBuffer toFree = this.allocated;
+		this.allocated = null;
+		this.buffer = ByteBuffer.allocate(0);
+		this.byteLength = 0;
+		if (toFree != null) free(toFree);
+	}
+
+	/**
+	 * Frees a direct or mapped buffer through the JDK's cleaner. Java 9 and later expose this through Unsafe.invokeCleaner, while
+	 * earlier releases keep the cleaner on the buffer itself. If neither can be reached the buffer is left to the garbage
+	 * collector.
+	 * @param buffer	The buffer to free
+	 */
+	static void free(ByteBuffer buffer)
+	{
+		try
+		{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+		}
+		catch (NoSuchMethodException e)
+		{
+			try
+			{
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+			catch (Exception e2)
+			{
+				// Left to the garbage collector
+			}
+		}
+		catch (Exception e)
+		{
+			// Left to the garbage collector
+		}
+	}
+}
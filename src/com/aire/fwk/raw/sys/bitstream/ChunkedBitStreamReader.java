@@ -0,0 +1,167 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads a bitstream written by a {@link ChunkedBitStreamWriter}. The index trailer is read once, after which each chunk
+ * is available as a slice of the stream, made without copying. {@link #decode(ChunkDecoder)} decodes every chunk on a
+ * fork-join pool, so the work spreads over all cores.
+ * <p>
+ * The stream must end where the index trailer ends, as the stream returned by {@link ChunkedBitStreamWriter#finish()}
+ * does. A stream that does not end with the trailer's marker is rejected.
+ *
+ * @author AireL
+ */
+public class ChunkedBitStreamReader
+{
+	/**
+	 * Decodes a single chunk. Decoders are called from several threads at once, each with its own reader.
+	 * @param <T>	The type of a decoded chunk
+	 */
+	public interface ChunkDecoder<T>
+	{
+		/**
+		 * Decodes a chunk
+		 * @param index	The index of the chunk
+		 * @param chunk	A reader over the chunk, starting at its first bit
+		 * @return	The decoded chunk
+		 */
+		T decode(int index, BitStreamReader chunk);
+	}
+
+	private final BitStream data;
+
+	/**
+	 * The starting position of each chunk, followed by the position of the index trailer
+	 */
+	private final int[] bounds;
+
+	/**
+	 * General constructor, reads the index of a chunked stream
+	 * @param data	The stream to read
+	 */
+	public ChunkedBitStreamReader(BitStream data)
+	{
+		this.data = data;
+		int dataSize = data.getDataSize();
+		BitStreamReader in = data.cursor();
+		if (dataSize < 2 * ChunkedBitStreamWriter.INDEX_BITS) throw new IllegalStateException("Error, a BitStream of " + dataSize
+				+ " bits is too short to hold a chunk index");
+		if (in.getInt(ChunkedBitStreamWriter.INDEX_BITS, dataSize - ChunkedBitStreamWriter.INDEX_BITS) != ChunkedBitStreamWriter
+				.INDEX_MARKER) throw new IllegalStateException("Error, the BitStream of " + dataSize + " bits does not end with "
+				+ "a chunk index");
+		int count = in.getInt(ChunkedBitStreamWriter.INDEX_BITS, dataSize - 2 * ChunkedBitStreamWriter.INDEX_BITS);
+		long trailer = dataSize - (count + 2L) * ChunkedBitStreamWriter.INDEX_BITS;
+		if (count < 0 || trailer < 0) throw new IllegalStateException("Error, the chunk index of " + count
+				+ " chunks does not fit in a BitStream of " + dataSize + " bits");
+		this.bounds = new int[count + 1];
+		this.bounds[count] = (int) trailer;
+		in.setCurrentLocation((int) trailer);
+		in.readInts(this.bounds, 0, count, ChunkedBitStreamWriter.INDEX_BITS);
+		for (int i = 0; i < count; i++)
+		{
+			if (this.bounds[i] < (i == 0 ? 0 : this.bounds[i - 1]) || this.bounds[i] > trailer) throw new IllegalStateException("Error, "
+					+ "chunk " + i + " starts at " + this.bounds[i] + ", which is out of order in the index");
+		}
+	}
+
+	/**
+	 * Returns the number of chunks in the stream
+	 * @return
+	 */
+	public int getChunkCount()
+	{
+		return this.bounds.length - 1;
+	}
+
+	/**
+	 * Returns a chunk as a view of the stream
+	 * @param index	The index of the chunk
+	 * @return	A BitStream over the chunk
+	 */
+	public BitStream getChunk(int index)
+	{
+		if (index < 0 || index >= this.getChunkCount()) throw new IndexOutOfBoundsException("Error, chunk " + index
+				+ " is out of bounds of a stream of " + this.getChunkCount() + " chunks");
+		return this.data.slice(this.bounds[index], this.bounds[index + 1] - this.bounds[index]);
+	}
+
+	/**
+	 * Decodes every chunk in parallel, on a pool with one thread per core
+	 * @param decoder	The decoder to call for each chunk
+	 * @return	The decoded chunks, in order
+	 */
+	public <T> List<T> decode(ChunkDecoder<T> decoder)
+	{
+		ForkJoinPool pool = new ForkJoinPool();
+		try
+		{
+			return this.decode(decoder, pool);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Decodes every chunk in parallel on a given pool. Chunks are split between tasks by halves, so idle threads steal
+	 * large runs of chunks before small ones.
+	 * @param decoder	The decoder to call for each chunk
+	 * @param pool		The pool to decode on
+	 * @return	The decoded chunks, in order
+	 */
+	public <T> List<T> decode(ChunkDecoder<T> decoder, ForkJoinPool pool)
+	{
+		Object[] results = new Object[this.getChunkCount()];
+		pool.invoke(new DecodeTask<T>(decoder, results, 0, results.length));
+		List<T> returnVal = new ArrayList<T>(results.length);
+		for (Object result : results)
+		{
+			@SuppressWarnings("unchecked")
+			T decoded = (T) result;
+			returnVal.add(decoded);
+		}
+		return returnVal;
+	}
+
+	/**
+	 * Decodes a run of chunks, splitting it in two until a single chunk is left
+	 */
+	private class DecodeTask<T> extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ChunkDecoder<T> decoder;
+		private final Object[] results;
+		private final int from;
+		private final int to;
+
+		DecodeTask(ChunkDecoder<T> decoder, Object[] results, int from, int to)
+		{
+			this.decoder = decoder;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (this.to - this.from <= 1)
+			{
+				if (this.to > this.from)
+				{
+					this.results[this.from] = this.decoder.decode(this.from, getChunk(this.from).cursor());
+				}
+				return;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			invokeAll(new DecodeTask<T>(this.decoder, this.results, this.from, middle),
+					new DecodeTask<T>(this.decoder, this.results, middle, this.to));
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.util.Arrays;
+
+/**
+ * Writes a bitstream as a series of chunks that can each be decoded on their own, so that a
+ * {@link ChunkedBitStreamReader} can decode them in parallel. Start each chunk with {@link #startChunk()}, write its data
+ * to the writer, and write nothing a chunk needs to share with another. Once every chunk is written, {@link #finish()}
+ * appends an index trailer: the starting position of each chunk in 32 bits, the number of chunks in 32 bits, then a 32 bit
+ * marker, so the index can be found from the end of the stream. A fixed-size writer leaves padding after the trailer, so
+ * read the stream returned by {@link #finish()}, which ends where the trailer ends.
+ *
+ * @author AireL
+ */
+public class ChunkedBitStreamWriter
+{
+	static final int INDEX_BITS = 32;
+
+	/**
+	 * The last field of the trailer, so that a reader can tell a stream with no index at its end
+	 */
+	static final int INDEX_MARKER = 0x43484B49;
+
+	private final BitStreamWriter out;
+
+	/**
+	 * The starting position of each chunk so far
+	 */
+	private int[] offsets = new int[16];
+	private int chunkCount = 0;
+
+	/**
+	 * General constructor, writes chunks onto a writer
+	 * @param out	The writer to write to
+	 */
+	public ChunkedBitStreamWriter(BitStreamWriter out)
+	{
+		this.out = out;
+	}
+
+	/**
+	 * Starts a new chunk at the writer's current location, ending the chunk before it
+	 * @return	The writer, to write the chunk's data to
+	 */
+	public BitStreamWriter startChunk()
+	{
+		if (this.chunkCount == this.offsets.length)
+		{
+			this.offsets = Arrays.copyOf(this.offsets, this.chunkCount * 2);
+		}
+		this.offsets[this.chunkCount++] = this.out.getCurrentLocation();
+		return this.out;
+	}
+
+	/**
+	 * Returns the number of chunks started
+	 * @return
+	 */
+	public int getChunkCount()
+	{
+		return this.chunkCount;
+	}
+
+	/**
+	 * Ends the last chunk and appends the index trailer. No more chunks can be written afterwards.
+	 * @return	A view of the writer's stream that ends with the trailer, to give to a {@link ChunkedBitStreamReader}
+	 */
+	public BitStream finish()
+	{
+		for (int i = 0; i < this.chunkCount; i++)
+		{
+			this.out.appendInt(this.offsets[i], INDEX_BITS);
+		}
+		this.out.appendInt(this.chunkCount, INDEX_BITS);
+		this.out.appendInt(INDEX_MARKER, INDEX_BITS);
+		return this.out.getBitStream().slice(0, this.out.getCurrentLocation());
+	}
+}
@@ -0,0 +1,243 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A writer that many threads can append to at once without locking. Each append first reserves the range it needs
+ * with a compare-and-set on the shared location, then writes into that range, which no other thread can touch. Words
+ * that lie wholly inside a range are written outright; the words at either end may be shared with the ranges next to
+ * them, and are merged in with a compare-and-set so that no neighbour's bits are lost.
+ * <p>
+ * Threads may also {@link #reserve(int)} a range and fill it later with the set methods. Bits appear in the order
+ * their ranges were reserved. Once every producer has finished, take the data with {@link #toBitStream()}.
+ *
+ * @author AireL
+ */
+public class ConcurrentBitStreamWriter
+{
+	private static final int WORD_LENGTH = 64;
+	private static final int BYTE_LENGTH = 8;
+
+	private final AtomicLongArrayBitStorage storage;
+	private final int dataSize;
+
+	/**
+	 * The end of the ranges reserved so far
+	 */
+	private final AtomicInteger currentLocation = new AtomicInteger();
+
+	/**
+	 * General constructor, creates a writer of a fixed size
+	 * @param dataSize	The number of bits the writer can hold
+	 */
+	public ConcurrentBitStreamWriter(int dataSize)
+	{
+		if (dataSize < 0) throw new IllegalArgumentException("Error, dataSize: " + dataSize + " is negative");
+		this.storage = new AtomicLongArrayBitStorage((dataSize + WORD_LENGTH - 1) / WORD_LENGTH);
+		this.dataSize = dataSize;
+	}
+
+	/**
+	 * Reserves the next bits of the stream for the calling thread
+	 * @param bits	The number of bits to reserve
+	 * @return	The position of the first bit reserved
+	 */
+	public int reserve(int bits)
+	{
+		if (bits < 0) throw new IllegalArgumentException("Error, bits: " + bits + " is negative");
+		while (true)
+		{
+			int start = this.currentLocation.get();
+			if (bits > this.dataSize - start) throw new IndexOutOfBoundsException("Error, adding " + bits + " to the "
+					+ "dataset will cause the BitStream to go out of bounds. There are " + (this.dataSize - start) +
+					" bits remaining");
+			if (this.currentLocation.compareAndSet(start, start + bits)) return start;
+		}
+	}
+
+	/**
+	 * Appends a single bit
+	 * @param data	True to append a 1, false to append a 0
+	 * @return	The position the bit was written to
+	 */
+	public int appendBit(boolean data)
+	{
+		int startPos = this.reserve(1);
+		this.writeBits(startPos, 1, data ? 1L : 0L);
+		return startPos;
+	}
+
+	/**
+	 * Appends the low bits of an integer
+	 * @param data		The data to append
+	 * @param bitLength	The amount of bits to append
+	 * @return	The position the first bit was written to
+	 */
+	public int appendInt(int data, int bitLength)
+	{
+		if (bitLength < 1 || bitLength > BYTE_LENGTH*4) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for an integer");
+		int startPos = this.reserve(bitLength);
+		this.writeBits(startPos, bitLength, data);
+		return startPos;
+	}
+
+	/**
+	 * Appends the low bits of a long
+	 * @param data		The data to append
+	 * @param bitLength	The amount of bits to append
+	 * @return	The position the first bit was written to
+	 */
+	public int appendLong(long data, int bitLength)
+	{
+		if (bitLength < 1 || bitLength > BYTE_LENGTH*8) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a long");
+		int startPos = this.reserve(bitLength);
+		this.writeBits(startPos, bitLength, data);
+		return startPos;
+	}
+
+	/**
+	 * Appends the first bits of a byte array, most significant bit first
+	 * @param data		The data to append
+	 * @param bitLength	The number of bits to append
+	 * @return	The position the first bit was written to
+	 */
+	public int append(byte[] data, int bitLength)
+	{
+		BitStream source = BitStream.wrap(data, 0, bitLength);
+		int startPos = this.reserve(bitLength);
+		this.writeRange(source, 0, startPos, bitLength);
+		return startPos;
+	}
+
+	/**
+	 * Appends the first bits of a BitStream
+	 * @param data		The data to append
+	 * @param bitLength	The number of bits to append
+	 * @return	The position the first bit was written to
+	 */
+	public int append(BitStream data, int bitLength)
+	{
+		if (bitLength < 0 || bitLength > data.getDataSize()) throw new IndexOutOfBoundsException("Error, appending " + bitLength
+				+ " bits will go out of bounds of a BitStream of length " + data.getDataSize());
+		int startPos = this.reserve(bitLength);
+		this.writeRange(data, 0, startPos, bitLength);
+		return startPos;
+	}
+
+	/**
+	 * Sets the low bits of a long in a range reserved by the calling thread
+	 * @param data		The data to set
+	 * @param bitLength	The amount of bits to set
+	 * @param startPos	The starting position to set from
+	 */
+	public void setLong(long data, int bitLength, int startPos)
+	{
+		if (bitLength < 1 || bitLength > BYTE_LENGTH*8) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a long");
+		this.checkReserved(bitLength, startPos);
+		this.writeBits(startPos, bitLength, data);
+	}
+
+	/**
+	 * Sets the first bits of a BitStream in a range reserved by the calling thread
+	 * @param data		The data to set
+	 * @param bitLength	The number of bits to set
+	 * @param startPos	The starting position to set from
+	 */
+	public void set(BitStream data, int bitLength, int startPos)
+	{
+		if (bitLength < 0 || bitLength > data.getDataSize()) throw new IndexOutOfBoundsException("Error, setting " + bitLength
+				+ " bits will go out of bounds of a BitStream of length " + data.getDataSize());
+		this.checkReserved(bitLength, startPos);
+		this.writeRange(data, 0, startPos, bitLength);
+	}
+
+	/**
+	 * Returns the end of the ranges reserved so far
+	 * @return
+	 */
+	public int getCurrentLocation()
+	{
+		return this.currentLocation.get();
+	}
+
+	/**
+	 * Returns the number of bits the writer can hold
+	 * @return
+	 */
+	public int getDataSize()
+	{
+		return this.dataSize;
+	}
+
+	/**
+	 * Returns a copy of the data reserved so far, as a BitStream ending at the current location. Call this once every
+	 * producer has finished writing.
+	 * @return
+	 */
+	public BitStream toBitStream()
+	{
+		int size = this.currentLocation.get();
+		return new BitStream(this.storage.copyOf((size + WORD_LENGTH - 1) / WORD_LENGTH), size);
+	}
+
+	/**
+	 * Writes up to 64 bits, merging each word they touch
+	 * @param startPos	The position to write from
+	 * @param length	The number of bits to write, from 1 to 64
+	 * @param value		The bits to write, right aligned
+	 */
+	private void writeBits(int startPos, int length, long value)
+	{
+		int index = startPos >>> 6;
+		int end = (startPos & (WORD_LENGTH - 1)) + length;
+		if (end <= WORD_LENGTH)
+		{
+			int shift = WORD_LENGTH - end;
+			this.storage.mergeWord(index, (-1L >>> (WORD_LENGTH - length)) << shift, value << shift);
+		}
+		else
+		{
+			int spill = end - WORD_LENGTH;
+			this.storage.mergeWord(index, -1L >>> (startPos & (WORD_LENGTH - 1)), value >>> spill);
+			this.storage.mergeWord(index + 1, -1L << (WORD_LENGTH - spill), value << (WORD_LENGTH - spill));
+		}
+	}
+
+	/**
+	 * Copies a range of a BitStream in. The partial words at either end are merged, and the whole words between them
+	 * are written outright, as no other thread can write to them.
+	 * @param src		The stream to copy from
+	 * @param srcPos	The position in the source to copy from
+	 * @param dstPos	The position to copy to
+	 * @param length	The number of bits to copy
+	 */
+	private void writeRange(BitStream src, int srcPos, int dstPos, int length)
+	{
+		if (length == 0) return;
+		src.sync();
+		int done = Math.min(length, (WORD_LENGTH - (dstPos & (WORD_LENGTH - 1))) & (WORD_LENGTH - 1));
+		if (done > 0)
+		{
+			this.writeBits(dstPos, done, src.getBits(srcPos, done));
+		}
+		for (; length - done >= WORD_LENGTH; done += WORD_LENGTH)
+		{
+			this.storage.setWord((dstPos + done) >>> 6, src.getBits(srcPos + done, WORD_LENGTH));
+		}
+		if (length > done)
+		{
+			this.writeBits(dstPos + done, length - done, src.getBits(srcPos + done, length - done));
+		}
+	}
+
+	/**
+	 * Checks that a range lies within the ranges reserved so far
+	 * @param range		Number of bits to check for
+	 * @param startPos	The start position to check from
+	 */
+	private void checkReserved(int range, int startPos)
+	{
+		if (startPos < 0 || startPos + range > this.currentLocation.get()) throw new IndexOutOfBoundsException("Error, setting "
+				+ range + " bits from position " + startPos + " goes beyond the " + this.currentLocation.get() + " bits reserved");
+	}
+}
@@ -0,0 +1,193 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+/**
+ * Decodes the blocks written by a {@link DeltaBlockWriter}. Values can be read one at a time or a block at a time, and
+ * whole blocks can be skipped using only their headers, which makes seeking through a sorted sequence cheap: look at
+ * the first value of each block with {@link #peekBlockStart()}, and skip the block if the value wanted lies beyond it.
+ * <p>
+ * The reader takes blocks from the underlying reader's current location until it reaches the end written by
+ * {@link DeltaBlockWriter#finish()}, and leaves the reader just after it. A sequence that runs into the end of the stream
+ * without being finished is reported as corrupt.
+ *
+ * @author AireL
+ */
+public class DeltaBlockReader
+{
+	private static final int WORD_LENGTH = 64;
+
+	private final BitStreamReader in;
+
+	/**
+	 * The block being read one value at a time, and the position of the next value in it
+	 */
+	private final long[] block = new long[DeltaBlockWriter.BLOCK_SIZE];
+	private int blockCount = 0;
+	private int blockPos = 0;
+
+	/**
+	 * Whether the end of the sequence has been read
+	 */
+	private boolean ended = false;
+
+	/**
+	 * General constructor, decodes from a reader
+	 * @param in	The reader to take blocks from
+	 */
+	public DeltaBlockReader(BitStreamReader in)
+	{
+		this.in = in;
+	}
+
+	/**
+	 * Returns whether there are values left to read
+	 * @return
+	 */
+	public boolean hasNext()
+	{
+		return this.blockPos < this.blockCount || this.hasNextBlock();
+	}
+
+	/**
+	 * Returns whether another block follows in the stream, reading past the end of the sequence if it has been reached
+	 * @return
+	 */
+	private boolean hasNextBlock()
+	{
+		if (this.ended) return false;
+		long count = this.in.getCurrentLocation() < this.in.getDataSize() ? this.in.peekBits(DeltaBlockWriter.COUNT_BITS) : 0L;
+		// A count of 0 is padding or the end of the stream, not a block
+		if (count == 0L) throw new IllegalStateException("Error, the sequence ends at position " + this.in.getCurrentLocation()
+				+ " without being finished");
+		if (count != DeltaBlockWriter.TERMINATOR) return true;
+		this.in.consume(DeltaBlockWriter.COUNT_BITS);
+		this.ended = true;
+		return false;
+	}
+
+	/**
+	 * Checks that another block follows in the stream
+	 */
+	private void checkHasNextBlock()
+	{
+		if (!this.hasNextBlock()) throw new IllegalStateException("Error, there are no blocks left in the sequence");
+	}
+
+	/**
+	 * Reads the next value of the sequence
+	 * @return	The value read
+	 */
+	public long next()
+	{
+		if (this.blockPos == this.blockCount)
+		{
+			this.blockCount = this.readBlock(this.block, 0);
+			this.blockPos = 0;
+		}
+		return this.block[this.blockPos++];
+	}
+
+	/**
+	 * Reads the next whole block. Any values left in a block being read one at a time are read first, in place of the
+	 * next block. If the block does not fit in the array, nothing is read and the reader is left where it was.
+	 * @param dest		The array to read into, with room for 128 values from the offset
+	 * @param offset	The offset in the array of the first value
+	 * @return	The number of values read
+	 */
+	public int readBlock(long[] dest, int offset)
+	{
+		if (this.blockPos < this.blockCount)
+		{
+			int n = this.blockCount - this.blockPos;
+			System.arraycopy(this.block, this.blockPos, dest, offset, n);
+			this.blockPos = this.blockCount;
+			return n;
+		}
+		this.checkHasNextBlock();
+		int start = this.in.getCurrentLocation();
+		int count = this.in.readInt(DeltaBlockWriter.COUNT_BITS);
+		int width = this.in.readInt(DeltaBlockWriter.WIDTH_BITS);
+		checkHeader(count, width);
+		if (offset < 0 || offset + count > dest.length)
+		{
+			// Leave the reader at the start of the block, so it can be read again into a larger array
+			this.in.setCurrentLocation(start);
+			throw new IndexOutOfBoundsException("Error, a block of " + count + " values from offset " + offset
+					+ " does not fit in an array of length: " + dest.length);
+		}
+		long value = this.in.readLong(WORD_LENGTH);
+		long minDelta = this.in.readSignedLEB128();
+		dest[offset] = value;
+		if (width > 0)
+		{
+			this.in.readLongs(dest, offset + 1, count - 1, width);
+			for (int i = offset + 1, end = offset + count; i < end; i++)
+			{
+				value += dest[i] + minDelta;
+				dest[i] = value;
+			}
+		}
+		else
+		{
+			for (int i = offset + 1, end = offset + count; i < end; i++)
+			{
+				value += minDelta;
+				dest[i] = value;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Skips the next block without unpacking it. Any values left in a block being read one at a time are skipped in
+	 * place of the next block.
+	 * @return	The number of values skipped
+	 */
+	public int skipBlock()
+	{
+		if (this.blockPos < this.blockCount)
+		{
+			int n = this.blockCount - this.blockPos;
+			this.blockPos = this.blockCount;
+			return n;
+		}
+		this.checkHasNextBlock();
+		int start = this.in.getCurrentLocation();
+		int count = this.in.readInt(DeltaBlockWriter.COUNT_BITS);
+		int width = this.in.readInt(DeltaBlockWriter.WIDTH_BITS);
+		checkHeader(count, width);
+		this.in.skip(WORD_LENGTH);
+		this.in.readSignedLEB128();
+		long end = this.in.getCurrentLocation() + (count - 1L) * width;
+		if (end > this.in.getDataSize())
+		{
+			this.in.setCurrentLocation(start);
+			throw new IndexOutOfBoundsException("Error, skipping the block of " + count + " values at position " + start
+					+ " goes beyond the end of a stream of length " + this.in.getDataSize());
+		}
+		this.in.setCurrentLocation((int) end);
+		return count;
+	}
+
+	/**
+	 * Returns the first value of the next block without moving the reader. As with {@link #readBlock(long[], int)}, any
+	 * values left in a block being read one at a time count as the next block.
+	 * @return	The first value of the block
+	 */
+	public long peekBlockStart()
+	{
+		if (this.blockPos < this.blockCount) return this.block[this.blockPos];
+		this.checkHasNextBlock();
+		return this.in.getLong(WORD_LENGTH, this.in.getCurrentLocation() + DeltaBlockWriter.COUNT_BITS + DeltaBlockWriter.WIDTH_BITS);
+	}
+
+	/**
+	 * Validates a block header
+	 * @param count	The number of values in the block
+	 * @param width	The packed width of the block
+	 */
+	private static void checkHeader(int count, int width)
+	{
+		if (count < 1 || count > DeltaBlockWriter.BLOCK_SIZE || width > WORD_LENGTH) throw new IllegalStateException("Error, "
+				+ "the block header of " + count + " values at width " + width + " is not valid");
+	}
+}
@@ -0,0 +1,168 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+/**
+ * Encodes sequences of longs, such as sorted timestamps or ids, in blocks of up to 128 values. Each value after the first
+ * in a block is stored as its difference from the one before, less the smallest difference in the block, and the results
+ * are bit-packed at the width of the largest. Sorted or slowly changing data packs to a few bits per value.
+ * <p>
+ * Each block starts with a header:
+ * <ul>
+ * <li>the number of values in the block, in 8 bits</li>
+ * <li>the packed width, in 7 bits</li>
+ * <li>the first value, in 64 bits</li>
+ * <li>the smallest difference, as a signed LEB128 varint</li>
+ * </ul>
+ * The header is followed by the packed differences. {@link #finish()} ends the sequence with a count of 255, which no
+ * block can have, so a reader stops there rather than at the end of the stream. Blocks can be read back, or skipped without unpacking them, with a
+ * {@link DeltaBlockReader}. Differences are taken with wrapping arithmetic, so any sequence of longs can be encoded.
+ *
+ * @author AireL
+ */
+public class DeltaBlockWriter
+{
+	/**
+	 * The most values held in a block
+	 */
+	public static final int BLOCK_SIZE = 128;
+
+	static final int COUNT_BITS = 8;
+	static final int WIDTH_BITS = 7;
+
+	/**
+	 * The count that ends a sequence
+	 */
+	static final int TERMINATOR = (1 << COUNT_BITS) - 1;
+	private static final int WORD_LENGTH = 64;
+
+	private final BitStreamWriter out;
+
+	/**
+	 * The values waiting to be written as a block, and space to work out their differences
+	 */
+	private final long[] values = new long[BLOCK_SIZE];
+	private final long[] deltas = new long[BLOCK_SIZE - 1];
+
+	/**
+	 * The number of values waiting to be written
+	 */
+	private int count = 0;
+
+	/**
+	 * Whether the sequence has been ended
+	 */
+	private boolean finished = false;
+
+	/**
+	 * General constructor, encodes onto a writer
+	 * @param out	The writer to append blocks to
+	 */
+	public DeltaBlockWriter(BitStreamWriter out)
+	{
+		this.out = out;
+	}
+
+	/**
+	 * Adds a value to the sequence. A block is written each time 128 values have been added.
+	 * @param value	The value to add
+	 */
+	public void append(long value)
+	{
+		if (this.finished) throw new IllegalStateException("Error, the sequence has already been finished");
+		this.values[this.count++] = value;
+		if (this.count == BLOCK_SIZE)
+		{
+			this.writeBlock();
+		}
+	}
+
+	/**
+	 * Adds values to the sequence
+	 * @param data		The array holding the values
+	 * @param offset	The offset of the first value in the array
+	 * @param count		The number of values to add
+	 */
+	public void append(long[] data, int offset, int count)
+	{
+		if (offset < 0 || count < 0 || offset + count > data.length || offset + count < 0) throw new IndexOutOfBoundsException("Error, "
+				+ count + " values from offset " + offset + " do not fit in an array of length: " + data.length);
+		if (this.finished) throw new IllegalStateException("Error, the sequence has already been finished");
+		while (count > 0)
+		{
+			int n = Math.min(count, BLOCK_SIZE - this.count);
+			System.arraycopy(data, offset, this.values, this.count, n);
+			this.count += n;
+			offset += n;
+			count -= n;
+			if (this.count == BLOCK_SIZE)
+			{
+				this.writeBlock();
+			}
+		}
+	}
+
+	/**
+	 * Writes any values added since the last full block as a shorter block
+	 */
+	public void flush()
+	{
+		if (this.count > 0)
+		{
+			this.writeBlock();
+		}
+	}
+
+	/**
+	 * Writes any waiting values and ends the sequence, so that a reader knows where it stops. Call this once the sequence
+	 * is complete; no more values can be added afterwards.
+	 */
+	public void finish()
+	{
+		if (this.finished) throw new IllegalStateException("Error, the sequence has already been finished");
+		this.flush();
+		this.out.appendInt(TERMINATOR, COUNT_BITS);
+		this.finished = true;
+	}
+
+	/**
+	 * Returns the number of values added but not yet written
+	 * @return
+	 */
+	public int getPendingCount()
+	{
+		return this.count;
+	}
+
+	/**
+	 * Writes the waiting values as a block
+	 */
+	private void writeBlock()
+	{
+		int n = this.count - 1;
+		long minDelta = 0L;
+		if (n > 0)
+		{
+			minDelta = Long.MAX_VALUE;
+			for (int i = 0; i < n; i++)
+			{
+				this.deltas[i] = this.values[i + 1] - this.values[i];
+				minDelta = Math.min(minDelta, this.deltas[i]);
+			}
+		}
+		long bits = 0L;
+		for (int i = 0; i < n; i++)
+		{
+			this.deltas[i] -= minDelta;
+			bits |= this.deltas[i];
+		}
+		int width = WORD_LENGTH - Long.numberOfLeadingZeros(bits);
+		this.out.appendInt(this.count, COUNT_BITS);
+		this.out.appendInt(width, WIDTH_BITS);
+		this.out.appendLong(this.values[0], WORD_LENGTH);
+		this.out.appendSignedLEB128(minDelta);
+		if (width > 0)
+		{
+			this.out.appendLongs(this.deltas, 0, n, width);
+		}
+		this.count = 0;
+	}
+}
@@ -0,0 +1,165 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+/**
+ * Decodes symbols of a canonical Huffman code, given only the length of each symbol's codeword. Codewords are assigned
+ * as in DEFLATE: shorter codes come first, and codes of the same length are in symbol order.
+ * <p>
+ * Each symbol is decoded with one {@link BitStreamReader#peekBits(int)} and a lookup in a table indexed by the next 11
+ * bits, which holds every codeword of up to 11 bits. The rarer, longer codewords fall back to a canonical search over
+ * the lengths past the table, which needs no further reads.
+ *
+ * @author AireL
+ */
+public class HuffmanDecoder
+{
+	/**
+	 * The longest codeword supported
+	 */
+	public static final int MAX_CODE_LENGTH = 32;
+
+	/**
+	 * The number of bits used to index the lookup table
+	 */
+	private static final int TABLE_BITS = 11;
+
+	/**
+	 * The bits of a table entry holding the codeword length. The symbol is held above them
+	 */
+	private static final int LENGTH_SHIFT = 6;
+	private static final int LENGTH_MASK = (1 << LENGTH_SHIFT) - 1;
+
+	/**
+	 * The length of the longest codeword, and the number of bits the table is indexed by
+	 */
+	private final int maxLength;
+	private final int tableBits;
+
+	/**
+	 * The lookup table. Each entry holds the symbol and length of the codeword that starts with its index, or 0 if the
+	 * codeword is longer than the table
+	 */
+	private final int[] table;
+
+	/**
+	 * For each codeword length, the first codeword, the number of codewords, and the index in the sorted symbols of the
+	 * first symbol with that length
+	 */
+	private final long[] firstCode = new long[MAX_CODE_LENGTH + 1];
+	private final int[] lengthCount = new int[MAX_CODE_LENGTH + 1];
+	private final int[] firstIndex = new int[MAX_CODE_LENGTH + 1];
+
+	/**
+	 * The symbols sorted by codeword
+	 */
+	private final int[] sorted;
+
+	/**
+	 * General constructor, builds the decoder from the codeword lengths
+	 * @param codeLengths	The length of each symbol's codeword, indexed by symbol. Symbols that do not occur have length 0
+	 */
+	public HuffmanDecoder(int[] codeLengths)
+	{
+		int symbols = 0;
+		int longest = 0;
+		for (int i = 0; i < codeLengths.length; i++)
+		{
+			int length = codeLengths[i];
+			if (length < 0 || length > MAX_CODE_LENGTH) throw new IllegalArgumentException("Error, code length: " + length
+					+ " of symbol " + i + " is out of range");
+			if (length > 0)
+			{
+				this.lengthCount[length]++;
+				symbols++;
+				longest = Math.max(longest, length);
+			}
+		}
+		if (symbols == 0) throw new IllegalArgumentException("Error, a code needs at least one symbol");
+		if (codeLengths.length > (Integer.MAX_VALUE >>> LENGTH_SHIFT)) throw new IllegalArgumentException("Error, "
+				+ codeLengths.length + " symbols is too many for a code");
+		this.maxLength = longest;
+		this.tableBits = Math.min(TABLE_BITS, longest);
+		long code = 0L;
+		int index = 0;
+		for (int length = 1; length <= longest; length++)
+		{
+			code = (code + this.lengthCount[length - 1]) << 1;
+			this.firstCode[length] = code;
+			this.firstIndex[length] = index;
+			index += this.lengthCount[length];
+			if (code + this.lengthCount[length] > (1L << length)) throw new IllegalArgumentException("Error, the code "
+					+ "lengths are oversubscribed at length " + length);
+		}
+		this.sorted = new int[symbols];
+		this.table = new int[1 << this.tableBits];
+		int[] next = new int[longest + 1];
+		for (int symbol = 0; symbol < codeLengths.length; symbol++)
+		{
+			int length = codeLengths[symbol];
+			if (length == 0) continue;
+			int rank = next[length]++;
+			this.sorted[this.firstIndex[length] + rank] = symbol;
+			if (length <= this.tableBits)
+			{
+				int shift = this.tableBits - length;
+				int start = (int) (this.firstCode[length] + rank) << shift;
+				int entry = (symbol << LENGTH_SHIFT) | length;
+				for (int i = start, end = start + (1 << shift); i < end; i++)
+				{
+					this.table[i] = entry;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes the next symbol from a reader
+	 * @param in	The reader to decode from
+	 * @return	The symbol decoded
+	 */
+	public int decode(BitStreamReader in)
+	{
+		int entry = this.table[(int) in.peekBits(this.tableBits)];
+		if (entry != 0)
+		{
+			in.consume(entry & LENGTH_MASK);
+			return entry >>> LENGTH_SHIFT;
+		}
+		long bits = in.peekBits(this.maxLength);
+		for (int length = this.tableBits + 1; length <= this.maxLength; length++)
+		{
+			long offset = (bits >>> (this.maxLength - length)) - this.firstCode[length];
+			if (offset >= 0 && offset < this.lengthCount[length])
+			{
+				in.consume(length);
+				return this.sorted[this.firstIndex[length] + (int) offset];
+			}
+		}
+		throw new IllegalStateException("Error, the bits at position " + in.getCurrentLocation() + " are not a codeword");
+	}
+
+	/**
+	 * Decodes a number of symbols from a reader
+	 * @param in		The reader to decode from
+	 * @param dest		The array to decode into
+	 * @param offset	The offset in the array of the first symbol
+	 * @param count		The number of symbols to decode
+	 */
+	public void decode(BitStreamReader in, int[] dest, int offset, int count)
+	{
+		if (offset < 0 || count < 0 || offset + count > dest.length || offset + count < 0) throw new IndexOutOfBoundsException("Error, "
+				+ count + " symbols from offset " + offset + " do not fit in an array of length: " + dest.length);
+		for (int end = offset + count; offset < end; offset++)
+		{
+			dest[offset] = this.decode(in);
+		}
+	}
+
+	/**
+	 * Returns the length of the longest codeword
+	 * @return
+	 */
+	public int getMaxLength()
+	{
+		return this.maxLength;
+	}
+}
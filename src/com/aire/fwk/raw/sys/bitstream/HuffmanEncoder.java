@@ -0,0 +1,244 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Encodes symbols with a canonical Huffman code, given the length of each symbol's codeword. Codewords are assigned as
+ * in DEFLATE, so the output can be read back with a {@link HuffmanDecoder} built from the same lengths. Lengths for a
+ * set of symbol frequencies can be built with {@link #buildCodeLengths(long[], int)}.
+ *
+ * @author AireL
+ */
+public class HuffmanEncoder
+{
+	private static final int WORD_LENGTH = 64;
+
+	/**
+	 * The codeword and codeword length of each symbol
+	 */
+	private final int[] codes;
+	private final int[] lengths;
+
+	/**
+	 * General constructor, assigns the canonical codewords for the lengths given
+	 * @param codeLengths	The length of each symbol's codeword, indexed by symbol. Symbols that do not occur have length 0
+	 */
+	public HuffmanEncoder(int[] codeLengths)
+	{
+		int[] lengthCount = new int[HuffmanDecoder.MAX_CODE_LENGTH + 1];
+		for (int i = 0; i < codeLengths.length; i++)
+		{
+			int length = codeLengths[i];
+			if (length < 0 || length > HuffmanDecoder.MAX_CODE_LENGTH) throw new IllegalArgumentException("Error, code length: "
+					+ length + " of symbol " + i + " is out of range");
+			lengthCount[length]++;
+		}
+		lengthCount[0] = 0;
+		long[] next = new long[HuffmanDecoder.MAX_CODE_LENGTH + 1];
+		long code = 0L;
+		for (int length = 1; length <= HuffmanDecoder.MAX_CODE_LENGTH; length++)
+		{
+			code = (code + lengthCount[length - 1]) << 1;
+			next[length] = code;
+			if (code + lengthCount[length] > (1L << length)) throw new IllegalArgumentException("Error, the code "
+					+ "lengths are oversubscribed at length " + length);
+		}
+		this.lengths = codeLengths.clone();
+		this.codes = new int[codeLengths.length];
+		for (int symbol = 0; symbol < codeLengths.length; symbol++)
+		{
+			if (codeLengths[symbol] > 0)
+			{
+				this.codes[symbol] = (int) next[codeLengths[symbol]]++;
+			}
+		}
+	}
+
+	/**
+	 * Builds the lengths of an optimal prefix code for a set of symbol frequencies, with no codeword longer than a limit.
+	 * An unlimited Huffman code is built first; if it is too deep, codewords are moved up the tree as in the JPEG
+	 * standard's Adjust_BITS, and the shortest codewords are then given to the most frequent symbols.
+	 * @param frequencies	The number of times each symbol occurs, indexed by symbol
+	 * @param maxLength		The longest codeword allowed, from 1 to 32
+	 * @return	The length of each symbol's codeword. Symbols that do not occur have length 0
+	 */
+	public static int[] buildCodeLengths(final long[] frequencies, int maxLength)
+	{
+		if (maxLength < 1 || maxLength > HuffmanDecoder.MAX_CODE_LENGTH) throw new IllegalArgumentException("Error, maxLength: "
+				+ maxLength + " is out of range");
+		int symbols = 0;
+		for (int i = 0; i < frequencies.length; i++)
+		{
+			if (frequencies[i] < 0) throw new IllegalArgumentException("Error, frequency: " + frequencies[i] + " of symbol "
+					+ i + " is negative");
+			if (frequencies[i] > 0) symbols++;
+		}
+		if (symbols > (1L << maxLength)) throw new IllegalArgumentException("Error, " + symbols + " symbols cannot be coded "
+				+ "in codewords of " + maxLength + " bits");
+		int[] codeLengths = new int[frequencies.length];
+		if (symbols == 0) return codeLengths;
+		Integer[] order = new Integer[symbols];
+		for (int i = 0, n = 0; i < frequencies.length; i++)
+		{
+			if (frequencies[i] > 0) order[n++] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				int byFrequency = Long.compare(frequencies[a], frequencies[b]);
+				return byFrequency != 0 ? byFrequency : a.compareTo(b);
+			}
+		});
+		int[] lengthCount = countLengths(frequencies, order);
+		for (int i = lengthCount.length - 1; i > maxLength; i--)
+		{
+			while (lengthCount[i] > 0)
+			{
+				int j = i - 2;
+				while (lengthCount[j] == 0) j--;
+				lengthCount[i] -= 2;
+				lengthCount[i - 1]++;
+				lengthCount[j + 1] += 2;
+				lengthCount[j]--;
+			}
+		}
+		int next = symbols - 1;
+		for (int length = 1; length <= maxLength && length < lengthCount.length; length++)
+		{
+			for (int n = lengthCount[length]; n > 0; n--)
+			{
+				codeLengths[order[next--]] = length;
+			}
+		}
+		return codeLengths;
+	}
+
+	/**
+	 * Counts the codeword lengths of an unlimited Huffman code. With the symbols sorted by frequency, the tree is built
+	 * with two queues, one of leaves and one of the internal nodes made so far, whose weights come out in order.
+	 * @param frequencies	The frequency of each symbol
+	 * @param order			The symbols that occur, sorted by rising frequency
+	 * @return	The number of codewords of each length
+	 */
+	private static int[] countLengths(long[] frequencies, Integer[] order)
+	{
+		int leaves = order.length;
+		if (leaves == 1)
+		{
+			return new int[] { 0, 1 };
+		}
+		long[] weight = new long[leaves - 1];
+		int[] parent = new int[2 * leaves - 1];
+		int leaf = 0;
+		int internal = 0;
+		for (int node = 0; node < leaves - 1; node++)
+		{
+			long total = 0L;
+			for (int pick = 0; pick < 2; pick++)
+			{
+				if (leaf < leaves && (internal == node || frequencies[order[leaf]] <= weight[internal]))
+				{
+					total += frequencies[order[leaf]];
+					parent[leaf++] = leaves + node;
+				}
+				else
+				{
+					total += weight[internal];
+					parent[leaves + internal++] = leaves + node;
+				}
+			}
+			weight[node] = total;
+		}
+		int[] depth = new int[2 * leaves - 1];
+		int[] lengthCount = new int[leaves];
+		for (int node = 2 * leaves - 3; node >= 0; node--)
+		{
+			depth[node] = depth[parent[node]] + 1;
+			if (node < leaves) lengthCount[depth[node]]++;
+		}
+		return lengthCount;
+	}
+
+	/**
+	 * Encodes a symbol onto a writer
+	 * @param out		The writer to encode onto
+	 * @param symbol	The symbol to encode
+	 */
+	public void encode(BitStreamWriter out, int symbol)
+	{
+		int length = this.lengths[symbol];
+		if (length == 0) throw new IllegalArgumentException("Error, symbol: " + symbol + " has no codeword");
+		out.appendLong(this.codes[symbol] & 0xFFFFFFFFL, length);
+	}
+
+	/**
+	 * Encodes symbols onto a writer
+	 * @param out		The writer to encode onto
+	 * @param symbols	The symbols to encode
+	 */
+	public void encodeSymbols(BitStreamWriter out, int[] symbols)
+	{
+		this.encodeSymbols(out, symbols, 0, symbols.length);
+	}
+
+	/**
+	 * Encodes symbols onto a writer. Codewords are packed into a local word, which is appended to the writer each time it
+	 * fills, so the writer is called once per 64 bits rather than once per symbol. The writer must have room for every
+	 * codeword, or nothing is written.
+	 * @param out		The writer to encode onto
+	 * @param symbols	The array holding the symbols
+	 * @param offset	The offset of the first symbol in the array
+	 * @param count		The number of symbols to encode
+	 */
+	public void encodeSymbols(BitStreamWriter out, int[] symbols, int offset, int count)
+	{
+		if (offset < 0 || count < 0 || offset + count > symbols.length || offset + count < 0) throw new IndexOutOfBoundsException("Error, "
+				+ count + " symbols from offset " + offset + " do not fit in an array of length: " + symbols.length);
+		long bits = 0L;
+		for (int i = offset, end = offset + count; i < end; i++)
+		{
+			int length = this.lengths[symbols[i]];
+			if (length == 0) throw new IllegalArgumentException("Error, symbol: " + symbols[i] + " has no codeword");
+			bits += length;
+		}
+		if (!out.isGrowable() && bits > out.getDataSize() - out.getCurrentLocation()) throw new IndexOutOfBoundsException("Error, "
+				+ "encoding " + bits + " bits will cause the BitStream to go out of bounds. There are "
+				+ (out.getDataSize() - out.getCurrentLocation()) + " bits remaining");
+		long word = 0L;
+		int used = 0;
+		for (int i = offset, end = offset + count; i < end; i++)
+		{
+			int length = this.lengths[symbols[i]];
+			long code = this.codes[symbols[i]] & 0xFFFFFFFFL;
+			if (used + length <= WORD_LENGTH)
+			{
+				word = (word << length) | code;
+				used += length;
+			}
+			else
+			{
+				int spill = used + length - WORD_LENGTH;
+				out.appendLong((word << (WORD_LENGTH - used)) | (code >>> spill), WORD_LENGTH);
+				word = code;
+				used = spill;
+			}
+		}
+		if (used > 0)
+		{
+			out.appendLong(word, used);
+		}
+	}
+
+	/**
+	 * Returns the length of a symbol's codeword
+	 * @param symbol	The symbol
+	 * @return	The length, or 0 if the symbol has no codeword
+	 */
+	public int getCodeLength(int symbol)
+	{
+		return this.lengths[symbol];
+	}
+}
@@ -0,0 +1,46 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.util.Arrays;
+
+/**
+ * On-heap storage held in a long array. This is the storage the writers create by default.
+ *
+ * @author AireL
+ */
+class LongArrayBitStorage extends BitStorage
+{
+	private final long[] words;
+
+	/**
+	 * Creates storage over a word array. The array is shared, not copied.
+	 * @param words	The packed words
+	 */
+	LongArrayBitStorage(long[] words)
+	{
+		this.words = words;
+	}
+
+	@Override
+	public long getWord(int index)
+	{
+		return this.words[index];
+	}
+
+	@Override
+	public void setWord(int index, long word)
+	{
+		this.words[index] = word;
+	}
+
+	@Override
+	public int getWordCount()
+	{
+		return this.words.length;
+	}
+
+	@Override
+	public BitStorage copyOf(int wordCount)
+	{
+		return new LongArrayBitStorage(Arrays.copyOf(this.words, wordCount));
+	}
+}
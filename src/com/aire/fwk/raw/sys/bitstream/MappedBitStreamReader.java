@@ -0,0 +1,498 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * A reader over a memory-mapped file, for bitstreams too large to load into memory. Positions are held as longs, so files
+ * beyond 2^31 bits can be read. The file is mapped in 1GB segments and paged in by the operating system as it is read, so
+ * opening a reader costs nothing up front. Bytes are taken most significant bit first, as with {@link BitStream#wrap}.
+ * <p>
+ * The reader offers the same reads and gets as {@link BitStreamReader}. Gets do not move the reader, so one reader can serve
+ * random lookups from several threads; reads share the reader's location and need a reader per thread.
+ * 
+ * @author AireL
+ */
+public class MappedBitStreamReader implements Closeable
+{
+	private static final int BYTE_LENGTH = 8;
+	private static final int WORD_LENGTH = 64;
+	private static final int WORD_BYTES = 8;
+	private static final int MAX_BYTE = 0xFF;
+	
+	/**
+	 * Size of each mapped segment. A multiple of the word size, so no word is split across segments
+	 */
+	private static final int SEGMENT_SHIFT = 30;
+	private static final long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+	
+	/**
+	 * The mapped segments of the file
+	 */
+	private final MappedByteBuffer[] segments;
+	
+	/**
+	 * The number of bits in the stream
+	 */
+	private final long dataSize;
+	
+	/**
+	 * Current location of the reader
+	 */
+	private long currentLocation = 0;
+	
+	/**
+	 * General constructor, maps the whole of a file
+	 * @param file	The file to read
+	 * @throws IOException
+	 */
+	public MappedBitStreamReader(File file) throws IOException
+	{
+		this(file, 0L, file.length() * BYTE_LENGTH);
+	}
+	
+	/**
+	 * Maps part of a file
+	 * @param file			The file to read
+	 * @param byteOffset	The offset of the first byte of the stream in the file
+	 * @param bitLength		The number of bits in the stream
+	 * @throws IOException
+	 */
+	public MappedBitStreamReader(File file, long byteOffset, long bitLength) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			this.segments = map(raf.getChannel(), byteOffset, bitLength);
+		}
+		finally
+		{
+			raf.close();
+		}
+		this.dataSize = bitLength;
+	}
+	
+	/**
+	 * Maps part of an open channel. The channel may be closed once the reader is built.
+	 * @param channel		The channel to read
+	 * @param byteOffset	The offset of the first byte of the stream in the channel
+	 * @param bitLength		The number of bits in the stream
+	 * @throws IOException
+	 */
+	public MappedBitStreamReader(FileChannel channel, long byteOffset, long bitLength) throws IOException
+	{
+		this.segments = map(channel, byteOffset, bitLength);
+		this.dataSize = bitLength;
+	}
+	
+	/**
+	 * Maps a range of a channel in segments
+	 * @param channel		The channel to map
+	 * @param byteOffset	The start of the range
+	 * @param bitLength		The number of bits in the range
+	 * @return	The mapped segments
+	 * @throws IOException
+	 */
+	private static MappedByteBuffer[] map(FileChannel channel, long byteOffset, long bitLength) throws IOException
+	{
+		long byteLength = (bitLength + BYTE_LENGTH - 1) / BYTE_LENGTH;
+		if (byteOffset < 0 || bitLength < 0 || byteOffset + byteLength > channel.size()) throw new IndexOutOfBoundsException("Error, "
+				+ bitLength + " bits from offset " + byteOffset + " do not fit in a file of length: " + channel.size());
+		MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((byteLength + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT)];
+		for (int i = 0; i < segments.length; i++)
+		{
+			long start = (long) i << SEGMENT_SHIFT;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, byteOffset + start, Math.min(SEGMENT_BYTES, byteLength - start));
+		}
+		return segments;
+	}
+	
+	/**
+	 * private method to get a word of the stream from its segment
+	 * @param index	The index of the word
+	 * @return	The word, with bits past the end of the file read as 0
+	 */
+	private long getWord(long index)
+	{
+		long bytePos = index * WORD_BYTES;
+		MappedByteBuffer segment = this.segment(bytePos);
+		int pos = (int) (bytePos & (SEGMENT_BYTES - 1));
+		if (pos + WORD_BYTES <= segment.limit()) return segment.getLong(pos);
+		long word = 0L;
+		for (int i = 0; i < WORD_BYTES; i++)
+		{
+			word <<= BYTE_LENGTH;
+			if (pos + i < segment.limit()) word |= segment.get(pos + i) & MAX_BYTE;
+		}
+		return word;
+	}
+	
+	/**
+	 * private method to get the segment holding a byte of the stream
+	 * @param bytePos	The byte position in the stream
+	 * @return	The segment
+	 */
+	private MappedByteBuffer segment(long bytePos)
+	{
+		MappedByteBuffer segment = this.segments[(int) (bytePos >>> SEGMENT_SHIFT)];
+		if (segment == null) throw new IllegalStateException("Error, the reader has been closed");
+		return segment;
+	}
+	
+	/**
+	 * private method to get up to 64 bits from the stream. The first bit read is the most significant bit of the result
+	 * @param startPos	The position to read from
+	 * @param length	The number of bits to read, from 1 to 64
+	 * @return	Returns the bits read, right aligned
+	 */
+	private long getBits(long startPos, int length)
+	{
+		long index = startPos >>> 6;
+		int offset = (int) (startPos & (WORD_LENGTH - 1));
+		long value = this.getWord(index) << offset;
+		if (offset + length > WORD_LENGTH)
+		{
+			value |= this.getWord(index + 1) >>> (WORD_LENGTH - offset);
+		}
+		return value >>> (WORD_LENGTH - length);
+	}
+	
+	/**
+	 * private method to read bits from the stream and move the reader on
+	 * @param bits	Number of bits to read, from 1 to 64
+	 * @return	Returns the bits read, right aligned
+	 */
+	private long readBits(int bits)
+	{
+		long returnVal = this.getBits(this.currentLocation, bits);
+		this.currentLocation += bits;
+		return returnVal;
+	}
+	
+	/**
+	 * private method to copy bits into a byte array. Whole bytes are filled first, and any remaining bits are placed in
+	 * the most significant end of the last byte. From a byte aligned position the whole bytes are copied out of each
+	 * segment in bulk.
+	 * @param bits		The number of bits to copy
+	 * @param startPos	The position to copy from
+	 * @return	A byte array of length (ceil (bits / 8))
+	 */
+	private byte[] getByteArray(int bits, long startPos)
+	{
+		byte[] returnVal = new byte[(bits + BYTE_LENGTH - 1) / BYTE_LENGTH];
+		int wholeBytes = bits / BYTE_LENGTH;
+		if (startPos % BYTE_LENGTH == 0)
+		{
+			long bytePos = startPos / BYTE_LENGTH;
+			for (int done = 0; done < wholeBytes; )
+			{
+				ByteBuffer view = this.segment(bytePos + done).duplicate();
+				int pos = (int) ((bytePos + done) & (SEGMENT_BYTES - 1));
+				int n = Math.min(wholeBytes - done, view.limit() - pos);
+				view.position(pos);
+				view.get(returnVal, done, n);
+				done += n;
+			}
+		}
+		else
+		{
+			for (int i = 0; i < wholeBytes; i++)
+			{
+				returnVal[i] = (byte) this.getBits(startPos + (long) i * BYTE_LENGTH, BYTE_LENGTH);
+			}
+		}
+		int remainder = bits % BYTE_LENGTH;
+		if (remainder > 0)
+		{
+			returnVal[wholeBytes] = (byte) (this.getBits(startPos + (long) wholeBytes * BYTE_LENGTH, remainder) << (BYTE_LENGTH - remainder));
+		}
+		return returnVal;
+	}
+	
+	/**
+	 * reads and returns a boolean
+	 * @return	A boolean - true if the bit is 1, false if the bit is 0
+	 */
+	public boolean readBoolean()
+	{
+		checkValidRead(1);
+		return this.readBits(1) != 0;
+	}
+	
+	/**
+	 * Reads and returns x bits as a byte
+	 * @param length	The number of bits to read
+	 * @return	A byte containing the number of read bits
+	 */
+	public byte readByte(int length)
+	{
+		checkValidRead(length);
+		if (length < 1 || length > 8) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for a byte");
+		return (byte) (this.readBits(length) << (BYTE_LENGTH - length));
+	}
+	
+	/**
+	 * Reads and returns x bits as a byte array.
+	 * @param length	The number of bits to read
+	 * @return	A byte array of length (ceil (length / 8))
+	 */
+	public byte[] readBytes(int length)
+	{
+		checkValidRead(length);
+		if (length < 1) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for a byte array");
+		byte[] returnVal = this.getByteArray(length, this.currentLocation);
+		this.currentLocation += length;
+		return returnVal;
+	}
+	
+	/**
+	 * Reads and returns an integer, using a set number of bits
+	 * @param length	The number of bits to read 
+	 * @return an integer compromising the number of bits read
+	 */
+	public int readInt(int length)
+	{
+		checkValidRead(length);
+		if (length < 1 || length > BYTE_LENGTH * 4) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for an integer");
+		return (int) this.readBits(length);
+	}
+	
+	/**
+	 * Reads and returns a long, using a set number of bits
+	 * @param length	The number of bits to read
+	 * @return a long compromising the number of bits read
+	 */
+	public long readLong(int length)
+	{
+		if (length < 1 || length > 8 * BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for a Long");
+		checkValidRead(length);
+		return this.readBits(length);
+	}
+	
+	/**
+	 * Reads and returns a char, using 16 bits
+	 * @return	A char.
+	 */
+	public char readChar()
+	{
+		checkValidRead(16);
+		return (char) this.readBits(16);
+	}
+	
+	/**
+	 * Reads and returns a string, using 16 bits per character
+	 * @param bits	The number of bits to read
+	 * @return	A string of length (bits / 16)
+	 */
+	public String readString(int bits)
+	{
+		checkValidRead(bits);
+		if (bits % (BYTE_LENGTH * 2) != 0) throw new IllegalArgumentException("Error: Bits must be a multiple of 16");
+		return new String(this.readBytes(bits));
+	}
+	
+	/**
+	 * Reads and returns a bitset of length bits
+	 * @param bits	The length of the bitset to return
+	 * @return	A bitset
+	 */
+	public BitSet readBitSet(int bits)
+	{
+		checkValidRead(bits);
+		BitSet returnVal = this.getBitSet(bits, this.currentLocation);
+		this.currentLocation += bits;
+		return returnVal;
+	}
+	
+	/**
+	 * Gets a boolean at the specified position
+	 * @param startPos	The position to read from
+	 * @return	A boolean (true if the bit was 1, false if 0)
+	 */
+	public boolean getBoolean(long startPos)
+	{
+		checkValidGet(1, startPos);
+		return this.getBits(startPos, 1) != 0;
+	}
+	
+	/**
+	 * Reads and returns x bits as a byte
+	 * @param length	The number of bits to read
+	 * @param startPos	The position to read from
+	 * @return	A byte containing the number of read bits
+	 */
+	public byte getByte(int length, long startPos)
+	{
+		checkValidGet(length, startPos);
+		if (length < 1 || length > 8) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for a byte");
+		return (byte) (this.getBits(startPos, length) << (BYTE_LENGTH - length));
+	}
+	
+	/**
+	 * Reads and returns x bits as a byte array.
+	 * @param length	The number of bits to read
+	 * @param startPos	The position to read from
+	 * @return	A byte array of length (ceil (length / 8))
+	 */
+	public byte[] getBytes(int length, long startPos)
+	{
+		checkValidGet(length, startPos);
+		if (length < 1) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for a byte array");
+		return this.getByteArray(length, startPos);
+	}
+	
+	/**
+	 * Reads and returns an integer, using a set number of bits
+	 * @param length	The number of bits to read 
+	 * @param startPos	The position to read from
+	 * @return an integer compromising the number of bits read
+	 */
+	public int getInt(int length, long startPos)
+	{
+		checkValidGet(length, startPos);
+		if (length < 1 || length > BYTE_LENGTH * 4) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for an integer");
+		return (int) this.getBits(startPos, length);
+	}
+	
+	/**
+	 * Reads and returns a long, using a set number of bits
+	 * @param length	The number of bits to read
+	 * @param startPos	The position to read from
+	 * @return a long compromising the number of bits read
+	 */
+	public long getLong(int length, long startPos)
+	{
+		checkValidGet(length, startPos);
+		if (length < 1 || length > 8 * BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for a Long");
+		return this.getBits(startPos, length);
+	}
+	
+	/**
+	 * Reads and returns a char, using 16 bits
+	 * @param startPos	The position to read from
+	 * @return	A char.
+	 */
+	public char getChar(long startPos)
+	{
+		checkValidGet(16, startPos);
+		return (char) this.getBits(startPos, 16);
+	}
+	
+	/**
+	 * Reads and returns a string, using 16 bits per character
+	 * @param bits		The number of bits to read
+	 * @param startPos	The position to read from
+	 * @return	A string of length (bits / 16)
+	 */
+	public String getString(int bits, long startPos)
+	{
+		checkValidGet(bits, startPos);
+		if (bits % (BYTE_LENGTH * 2) != 0) throw new IllegalArgumentException("Error: Bits must be a multiple of 16");
+		return new String(this.getBytes(bits, startPos));
+	}
+	
+	/**
+	 * Reads and returns a bitset of length bits
+	 * @param bits		The length of the bitset to return
+	 * @param startPos	The position to read from
+	 * @return	A bitset
+	 */
+	public BitSet getBitSet(int bits, long startPos)
+	{
+		checkValidGet(bits, startPos);
+		long[] setWords = new long[(bits + WORD_LENGTH - 1) / WORD_LENGTH];
+		for (int i = 0; i < setWords.length; i++)
+		{
+			int chunk = Math.min(WORD_LENGTH, bits - i * WORD_LENGTH);
+			setWords[i] = Long.reverse(this.getBits(startPos + (long) i * WORD_LENGTH, chunk) << (WORD_LENGTH - chunk));
+		}
+		return BitSet.valueOf(setWords);
+	}
+	
+	/**
+	 * Returns the number of bits in the stream
+	 * @return
+	 */
+	public long getDataSize()
+	{
+		return this.dataSize;
+	}
+	
+	/**
+	 * Returns the current location of the reader
+	 * @return
+	 */
+	public long getCurrentLocation() 
+	{
+		return this.currentLocation;
+	}
+	
+	/**
+	 * Sets the current location of the reader
+	 * @param currentLocation
+	 */
+	public void setCurrentLocation(long currentLocation) 
+	{
+		this.currentLocation = currentLocation;
+	}
+	
+	/**
+	 * Skips the next bits in the reader
+	 * @param bits	The number of bits to skip
+	 */
+	public void skip(long bits)
+	{
+		this.currentLocation += bits;
+	}
+	
+	/**
+	 * Closes the reader, dropping its mapping of the file. Any read afterwards fails with an IllegalStateException. The
+	 * mapping is not forced out, as a thread still reading could then touch unmapped memory; it is unmapped by the garbage
+	 * collector once nothing refers to it.
+	 */
+	@Override
+	public void close()
+	{
+		for (int i = 0; i < this.segments.length; i++)
+		{
+			this.segments[i] = null;
+		}
+	}
+
+	/**
+	 * Validates the read to ensure there are enough bits remaining to complete a read
+	 * @param bits
+	 */
+	private void checkValidRead(int bits)
+	{
+		if (this.currentLocation + bits > this.dataSize) throw new IndexOutOfBoundsException("Error, reading " + bits + " from the "
+				+ "dataset will cause the BitStream to go out of bounds. There are " + (this.dataSize - this.currentLocation) + 
+				" bits remaining");
+	}
+	
+	/**
+	 * Validates the get to ensure there are enough bits remaining to get.
+	 * @param bits
+	 * @param startPos
+	 */
+	private void checkValidGet(int bits, long startPos)
+	{
+		if (startPos < 0 || startPos + bits > this.dataSize) throw new IndexOutOfBoundsException("Error, reading " + bits
+				+ " from the dataset will cause the BitStream to go out of bounds. There are " + (this.dataSize - startPos) + 
+				" bits remaining");
+	}
+}
@@ -0,0 +1,132 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+/**
+ * A view of part of another storage, starting at any bit. Words of the view are shifted out of the two words of the
+ * backing storage they straddle, so nothing is copied. Writes go through to the backing storage, leaving the bits
+ * outside the view untouched.
+ *
+ * @author AireL
+ */
+class OffsetBitStorage extends BitStorage
+{
+	private static final int WORD_LENGTH = 64;
+
+	private final BitStorage parent;
+
+	/**
+	 * The position in the backing storage of the first bit of the view, and the number of bits in the view
+	 */
+	private final long bitOffset;
+	private final int bitLength;
+
+	/**
+	 * Creates a view over part of a storage
+	 * @param parent	The backing storage
+	 * @param bitOffset	The position of the first bit of the view
+	 * @param bitLength	The number of bits in the view
+	 */
+	OffsetBitStorage(BitStorage parent, long bitOffset, int bitLength)
+	{
+		this.parent = parent;
+		this.bitOffset = bitOffset;
+		this.bitLength = bitLength;
+	}
+
+	/**
+	 * Creates a view over part of a storage, viewing the backing storage directly if it is itself a view
+	 * @param storage	The storage to view
+	 * @param bitOffset	The position of the first bit of the view
+	 * @param bitLength	The number of bits in the view
+	 * @return	The view
+	 */
+	static BitStorage of(BitStorage storage, int bitOffset, int bitLength)
+	{
+		if (storage instanceof OffsetBitStorage)
+		{
+			OffsetBitStorage view = (OffsetBitStorage) storage;
+			return new OffsetBitStorage(view.parent, view.bitOffset + bitOffset, bitLength);
+		}
+		return new OffsetBitStorage(storage, bitOffset, bitLength);
+	}
+
+	/**
+	 * Returns the storage that holds the bits of a storage, looking through a view to its backing storage
+	 * @param storage	The storage
+	 * @return	The backing storage of a view, or the storage itself
+	 */
+	static BitStorage rootOf(BitStorage storage)
+	{
+		return storage instanceof OffsetBitStorage ? ((OffsetBitStorage) storage).parent : storage;
+	}
+
+	/**
+	 * Returns the position of a storage's first bit in the storage returned by {@link #rootOf(BitStorage)}
+	 * @param storage	The storage
+	 * @return	The offset of a view, or 0
+	 */
+	static long offsetOf(BitStorage storage)
+	{
+		return storage instanceof OffsetBitStorage ? ((OffsetBitStorage) storage).bitOffset : 0L;
+	}
+
+	@Override
+	public long getWord(int index)
+	{
+		checkIndex(index);
+		long pos = this.bitOffset + (long) index * WORD_LENGTH;
+		int parentIndex = (int) (pos >>> 6);
+		int shift = (int) (pos & (WORD_LENGTH - 1));
+		long word = this.parent.getWord(parentIndex) << shift;
+		int bits = Math.min(WORD_LENGTH, this.bitLength - index * WORD_LENGTH);
+		if (shift + bits > WORD_LENGTH)
+		{
+			word |= this.parent.getWord(parentIndex + 1) >>> (WORD_LENGTH - shift);
+		}
+		return word & (-1L << (WORD_LENGTH - bits));
+	}
+
+	@Override
+	public void setWord(int index, long word)
+	{
+		checkIndex(index);
+		long pos = this.bitOffset + (long) index * WORD_LENGTH;
+		int parentIndex = (int) (pos >>> 6);
+		int shift = (int) (pos & (WORD_LENGTH - 1));
+		int bits = Math.min(WORD_LENGTH, this.bitLength - index * WORD_LENGTH);
+		long mask = -1L << (WORD_LENGTH - bits);
+		word &= mask;
+		this.parent.setWord(parentIndex, (this.parent.getWord(parentIndex) & ~(mask >>> shift)) | (word >>> shift));
+		if (shift + bits > WORD_LENGTH)
+		{
+			int rest = WORD_LENGTH - shift;
+			this.parent.setWord(parentIndex + 1, (this.parent.getWord(parentIndex + 1) & ~(mask << rest)) | (word << rest));
+		}
+	}
+
+	@Override
+	public int getWordCount()
+	{
+		return (this.bitLength + WORD_LENGTH - 1) / WORD_LENGTH;
+	}
+
+	@Override
+	public BitStorage copyOf(int wordCount)
+	{
+		long[] words = new long[wordCount];
+		for (int i = 0, n = Math.min(wordCount, this.getWordCount()); i < n; i++)
+		{
+			words[i] = this.getWord(i);
+		}
+		return new LongArrayBitStorage(words);
+	}
+
+	/**
+	 * Checks a word index is within the view
+	 * @param index	The index of the word
+	 */
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= this.getWordCount()) throw new IndexOutOfBoundsException("Error, word " + index
+				+ " is out of bounds of a view of " + this.getWordCount() + " words");
+	}
+}
@@ -0,0 +1,135 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+/**
+ * Decodes the output of a {@link RangeEncoder}. Bits must be decoded against the same models, in the same order, as
+ * they were coded. Coded bytes are read from the reader 64 bits at a time while there are that many left.
+ *
+ * @author AireL
+ */
+public class RangeDecoder
+{
+	private static final int BYTE_LENGTH = 8;
+	private static final int WORD_LENGTH = 64;
+	private static final int MAX_BYTE = 0xFF;
+
+	private final BitStreamReader in;
+
+	/**
+	 * The size of the range and the coded value within it, both as unsigned ints
+	 */
+	private int range = -1;
+	private int code = 0;
+
+	/**
+	 * Coded bytes read ahead from the reader, and the number of them
+	 */
+	private long buffered = 0L;
+	private int bufferedBytes = 0;
+
+	/**
+	 * General constructor, decodes from a reader
+	 * @param in	The reader to decode from
+	 */
+	public RangeDecoder(BitStreamReader in)
+	{
+		this.in = in;
+		if (this.nextByte() != 0) throw new IllegalStateException("Error, the data at position " + in.getCurrentLocation()
+				+ " does not start range coded data");
+		for (int i = 0; i < 4; i++)
+		{
+			this.code = (this.code << BYTE_LENGTH) | this.nextByte();
+		}
+	}
+
+	/**
+	 * Decodes a bit against a context of a model, and updates the context
+	 * @param model	The probability model
+	 * @param index	The context in the model
+	 * @return	The bit decoded, 0 or 1
+	 */
+	public int decodeBit(short[] model, int index)
+	{
+		int probability = model[index];
+		int bound = (this.range >>> RangeEncoder.PROBABILITY_BITS) * probability;
+		int bit;
+		if ((this.code ^ Integer.MIN_VALUE) < (bound ^ Integer.MIN_VALUE))
+		{
+			this.range = bound;
+			model[index] = (short) (probability + ((RangeEncoder.PROBABILITY_ONE - probability) >>> RangeEncoder.MOVE_BITS));
+			bit = 0;
+		}
+		else
+		{
+			this.code -= bound;
+			this.range -= bound;
+			model[index] = (short) (probability - (probability >>> RangeEncoder.MOVE_BITS));
+			bit = 1;
+		}
+		if ((this.range & RangeEncoder.TOP_MASK) == 0)
+		{
+			this.code = (this.code << BYTE_LENGTH) | this.nextByte();
+			this.range <<= BYTE_LENGTH;
+		}
+		return bit;
+	}
+
+	/**
+	 * Decodes a symbol coded with {@link RangeEncoder#encodeBitTree(short[], int, int)}
+	 * @param model	The probability model, with 2^bits contexts
+	 * @param bits	The number of bits in the symbol
+	 * @return	The symbol decoded
+	 */
+	public int decodeBitTree(short[] model, int bits)
+	{
+		int index = 1;
+		for (int i = 0; i < bits; i++)
+		{
+			index = (index << 1) | this.decodeBit(model, index);
+		}
+		return index - (1 << bits);
+	}
+
+	/**
+	 * Decodes bits coded at even odds
+	 * @param count	The number of bits to decode, from 1 to 32
+	 * @return	The bits decoded, right aligned
+	 */
+	public int decodeDirectBits(int count)
+	{
+		if (count < 1 || count > Integer.SIZE) throw new IllegalArgumentException("Error, count: " + count + " is out of range");
+		int result = 0;
+		do
+		{
+			this.range >>>= 1;
+			int below = (this.code - this.range) >>> 31;
+			this.code -= this.range & (below - 1);
+			result = (result << 1) | (1 - below);
+			if ((this.range & RangeEncoder.TOP_MASK) == 0)
+			{
+				this.code = (this.code << BYTE_LENGTH) | this.nextByte();
+				this.range <<= BYTE_LENGTH;
+			}
+		}
+		while (--count > 0);
+		return result;
+	}
+
+	/**
+	 * Returns the next coded byte, refilling the read ahead a word at a time
+	 * @return	The byte
+	 */
+	private int nextByte()
+	{
+		if (this.bufferedBytes == 0)
+		{
+			if (this.in.getDataSize() - this.in.getCurrentLocation() < WORD_LENGTH)
+			{
+				return this.in.readInt(BYTE_LENGTH);
+			}
+			this.buffered = this.in.readLong(WORD_LENGTH);
+			this.bufferedBytes = WORD_LENGTH / BYTE_LENGTH;
+		}
+		this.bufferedBytes--;
+		return (int) (this.buffered >>> (this.bufferedBytes * BYTE_LENGTH)) & MAX_BYTE;
+	}
+}
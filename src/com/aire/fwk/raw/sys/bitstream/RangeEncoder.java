@@ -0,0 +1,192 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.util.Arrays;
+
+/**
+ * An adaptive binary range coder in the style of LZMA, writing through a {@link BitStreamWriter}. Bits are coded against
+ * probability models that adapt as they are used, so skewed streams of events code close to their entropy.
+ * <p>
+ * A model is a short array from {@link #newModel(int)}, holding one 11 bit probability per context. The same models,
+ * used in the same order, decode the output with a {@link RangeDecoder}. Multi-bit symbols can be coded through a binary
+ * tree of contexts with {@link #encodeBitTree(short[], int, int)}, and bits with no useful model with
+ * {@link #encodeDirectBits(int, int)}.
+ * <p>
+ * A carry out of the low end of the range can reach bytes already produced. Those bytes are held back, as a cached byte
+ * and a count of 0xFF bytes after it, until the carry is known. Settled bytes are gathered into a word and appended to
+ * the writer 64 bits at a time. Call {@link #finish()} once the last bit is coded.
+ *
+ * @author AireL
+ */
+public class RangeEncoder
+{
+	static final int PROBABILITY_BITS = 11;
+	static final int PROBABILITY_ONE = 1 << PROBABILITY_BITS;
+	static final int MOVE_BITS = 5;
+	static final int TOP_MASK = 0xFF000000;
+	private static final int BYTE_LENGTH = 8;
+	private static final int WORD_LENGTH = 64;
+	private static final int MAX_BYTE = 0xFF;
+
+	private final BitStreamWriter out;
+
+	/**
+	 * The low end of the range, with room above bit 32 for a carry, and the size of the range as an unsigned int
+	 */
+	private long low = 0L;
+	private int range = -1;
+
+	/**
+	 * The byte held back until any carry into it is known, and the number of bytes held back counting it
+	 */
+	private int cache = 0;
+	private long cacheSize = 1;
+
+	/**
+	 * Settled bytes waiting to be appended, and the number of them
+	 */
+	private long pending = 0L;
+	private int pendingBytes = 0;
+
+	/**
+	 * General constructor, codes onto a writer
+	 * @param out	The writer to append to
+	 */
+	public RangeEncoder(BitStreamWriter out)
+	{
+		this.out = out;
+	}
+
+	/**
+	 * Creates a probability model with every context at even odds
+	 * @param contexts	The number of contexts in the model
+	 * @return	The model
+	 */
+	public static short[] newModel(int contexts)
+	{
+		short[] model = new short[contexts];
+		Arrays.fill(model, (short) (PROBABILITY_ONE >>> 1));
+		return model;
+	}
+
+	/**
+	 * Codes a bit against a context of a model, and updates the context
+	 * @param model	The probability model
+	 * @param index	The context in the model
+	 * @param bit	The bit to code, 0 or 1
+	 */
+	public void encodeBit(short[] model, int index, int bit)
+	{
+		int probability = model[index];
+		int bound = (this.range >>> PROBABILITY_BITS) * probability;
+		if (bit == 0)
+		{
+			this.range = bound;
+			model[index] = (short) (probability + ((PROBABILITY_ONE - probability) >>> MOVE_BITS));
+		}
+		else
+		{
+			this.low += bound & 0xFFFFFFFFL;
+			this.range -= bound;
+			model[index] = (short) (probability - (probability >>> MOVE_BITS));
+		}
+		if ((this.range & TOP_MASK) == 0)
+		{
+			this.range <<= BYTE_LENGTH;
+			this.shiftLow();
+		}
+	}
+
+	/**
+	 * Codes a symbol as its bits, most significant first, each against a context chosen by the bits before it
+	 * @param model		The probability model, with 2^bits contexts
+	 * @param bits		The number of bits in the symbol
+	 * @param symbol	The symbol to code
+	 */
+	public void encodeBitTree(short[] model, int bits, int symbol)
+	{
+		int index = 1;
+		for (int i = bits - 1; i >= 0; i--)
+		{
+			int bit = (symbol >>> i) & 1;
+			this.encodeBit(model, index, bit);
+			index = (index << 1) | bit;
+		}
+	}
+
+	/**
+	 * Codes bits at even odds, without a model
+	 * @param value	The bits to code, right aligned
+	 * @param count	The number of bits to code, from 1 to 32
+	 */
+	public void encodeDirectBits(int value, int count)
+	{
+		if (count < 1 || count > Integer.SIZE) throw new IllegalArgumentException("Error, count: " + count + " is out of range");
+		do
+		{
+			this.range >>>= 1;
+			count--;
+			if (((value >>> count) & 1) != 0)
+			{
+				this.low += this.range & 0xFFFFFFFFL;
+			}
+			if ((this.range & TOP_MASK) == 0)
+			{
+				this.range <<= BYTE_LENGTH;
+				this.shiftLow();
+			}
+		}
+		while (count > 0);
+	}
+
+	/**
+	 * Writes out the rest of the coded data. The encoder must not be used afterwards.
+	 */
+	public void finish()
+	{
+		for (int i = 0; i < 5; i++)
+		{
+			this.shiftLow();
+		}
+		if (this.pendingBytes > 0)
+		{
+			this.out.appendLong(this.pending, this.pendingBytes * BYTE_LENGTH);
+			this.pendingBytes = 0;
+		}
+	}
+
+	/**
+	 * Moves the top byte out of the low end of the range. Once a byte below 0xFF, or a carry, settles the bytes held
+	 * back, they are released with the carry added.
+	 */
+	private void shiftLow()
+	{
+		if (this.low < 0xFF000000L || this.low > 0xFFFFFFFFL)
+		{
+			int carry = (int) (this.low >>> 32);
+			int settled = this.cache;
+			do
+			{
+				this.emit((settled + carry) & MAX_BYTE);
+				settled = MAX_BYTE;
+			}
+			while (--this.cacheSize != 0);
+			this.cache = (int) (this.low >>> 24) & MAX_BYTE;
+		}
+		this.cacheSize++;
+		this.low = (this.low & 0x00FFFFFFL) << BYTE_LENGTH;
+	}
+
+	/**
+	 * Gathers a settled byte, appending a word to the writer when one is full
+	 * @param value	The byte
+	 */
+	private void emit(int value)
+	{
+		this.pending = (this.pending << BYTE_LENGTH) | value;
+		if (++this.pendingBytes == WORD_LENGTH / BYTE_LENGTH)
+		{
+			this.out.appendLong(this.pending, WORD_LENGTH);
+			this.pendingBytes = 0;
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+/**
+ * A succinct index over a BitStream for counting set bits up to a position (rank) and finding the position of the k-th
+ * set bit (select), without scanning the stream.
+ * <p>
+ * The layout follows Poppy. The stream is split into superblocks of 2048 bits, each with one long in the index: the
+ * number of set bits before the superblock in the upper 32 bits, and the counts of the first three of its four 512 bit
+ * blocks in 10 bits each below that. A rank is then one index lookup and at most eight popcounts. Select samples the
+ * superblock holding every 8192nd set bit, searches the superblocks between two samples, and finishes within a block with
+ * popcounts. The counts and samples cost about 3.2% of the stream's size.
+ * <p>
+ * The index is built in one pass and reads the stream's own words, without copying them. It holds only for the stream
+ * as it was when the index was made: once the stream changes, build a new index, as ranks and selects may otherwise be
+ * wrong. A select that finds the stream no longer matches the index fails with an IllegalStateException.
+ *
+ * @author AireL
+ */
+public class RankSelectIndex
+{
+	private static final int WORD_LENGTH = 64;
+	private static final int BYTE_LENGTH = 8;
+	private static final int MAX_BYTE = 0xFF;
+
+	/**
+	 * Words in a block and in a superblock
+	 */
+	private static final int BLOCK_WORDS = 8;
+	private static final int SUPERBLOCK_SHIFT = 11;
+	private static final int SUPERBLOCK_WORDS = 32;
+	private static final int BLOCK_COUNT_BITS = 10;
+	private static final int BLOCK_COUNT_MASK = (1 << BLOCK_COUNT_BITS) - 1;
+
+	/**
+	 * The number of set bits between select samples
+	 */
+	private static final int SELECT_SHIFT = 13;
+
+	private final BitStorage storage;
+	private final int dataSize;
+	private final int wordCount;
+
+	/**
+	 * One entry per superblock, with a final entry holding the total count
+	 */
+	private final long[] superblocks;
+
+	/**
+	 * The superblock holding each sampled set bit
+	 */
+	private final int[] samples;
+
+	private final int count;
+
+	/**
+	 * General constructor, builds the index over a stream
+	 * @param data	The stream to index
+	 */
+	public RankSelectIndex(BitStream data)
+	{
+		this.storage = BitStream.storageOf(data);
+		this.dataSize = data.getDataSize();
+		int wordCount = (this.dataSize + WORD_LENGTH - 1) / WORD_LENGTH;
+		this.wordCount = wordCount;
+		int superblockCount = (wordCount + SUPERBLOCK_WORDS - 1) / SUPERBLOCK_WORDS;
+		this.superblocks = new long[superblockCount + 1];
+		int total = 0;
+		for (int s = 0; s < superblockCount; s++)
+		{
+			long entry = (long) total << 32;
+			int blockCount = 0;
+			for (int w = 0; w < SUPERBLOCK_WORDS; w++)
+			{
+				int index = s * SUPERBLOCK_WORDS + w;
+				if (w % BLOCK_WORDS == 0 && w > 0)
+				{
+					entry |= (long) blockCount << (BLOCK_COUNT_BITS * (3 - w / BLOCK_WORDS));
+					blockCount = 0;
+				}
+				if (index < wordCount)
+				{
+					int bits = Long.bitCount(this.word(index));
+					blockCount += bits;
+					total += bits;
+				}
+			}
+			this.superblocks[s] = entry;
+		}
+		this.superblocks[superblockCount] = (long) total << 32;
+		this.count = total;
+		this.samples = new int[(total >>> SELECT_SHIFT) + 2];
+		int s = 0;
+		for (int k = 0; k < this.samples.length - 1; k++)
+		{
+			long target = (long) k << SELECT_SHIFT;
+			while (s + 1 < superblockCount && (this.superblocks[s + 1] >>> 32) <= target) s++;
+			this.samples[k] = s;
+		}
+		this.samples[this.samples.length - 1] = Math.max(0, superblockCount - 1);
+	}
+
+	/**
+	 * Returns the number of set bits before a position
+	 * @param pos	The position, from 0 to the length of the stream
+	 * @return	The number of 1s in [0, pos)
+	 */
+	public int rank1(int pos)
+	{
+		if (pos < 0 || pos > this.dataSize) throw new IndexOutOfBoundsException("Error, position " + pos
+				+ " is out of bounds of a BitStream of length " + this.dataSize);
+		int s = pos >>> SUPERBLOCK_SHIFT;
+		long entry = this.superblocks[s];
+		int rank = (int) (entry >>> 32);
+		int block = (pos >>> 9) & 3;
+		for (int b = 0; b < block; b++)
+		{
+			rank += (int) (entry >>> (BLOCK_COUNT_BITS * (2 - b))) & BLOCK_COUNT_MASK;
+		}
+		int index = (pos >>> 9) * BLOCK_WORDS;
+		for (int end = pos >>> 6; index < end; index++)
+		{
+			rank += Long.bitCount(this.word(index));
+		}
+		int offset = pos & (WORD_LENGTH - 1);
+		if (offset > 0)
+		{
+			rank += Long.bitCount(this.word(index) >>> (WORD_LENGTH - offset));
+		}
+		return rank;
+	}
+
+	/**
+	 * Returns the number of clear bits before a position
+	 * @param pos	The position, from 0 to the length of the stream
+	 * @return	The number of 0s in [0, pos)
+	 */
+	public int rank0(int pos)
+	{
+		return pos - this.rank1(pos);
+	}
+
+	/**
+	 * Returns the position of a set bit
+	 * @param k	The rank of the set bit, counting from 0
+	 * @return	The position of the k-th 1
+	 */
+	public int select1(int k)
+	{
+		if (k < 0 || k >= this.count) throw new IndexOutOfBoundsException("Error, rank " + k + " is out of bounds of a "
+				+ "BitStream with " + this.count + " set bits");
+		int low = this.samples[k >>> SELECT_SHIFT];
+		int high = this.samples[(k >>> SELECT_SHIFT) + 1];
+		while (low < high)
+		{
+			int middle = (low + high + 1) >>> 1;
+			if ((this.superblocks[middle] >>> 32) <= k)
+			{
+				low = middle;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+		long entry = this.superblocks[low];
+		int remaining = k - (int) (entry >>> 32);
+		int index = low * SUPERBLOCK_WORDS;
+		for (int b = 0; b < 3; b++)
+		{
+			int blockCount = (int) (entry >>> (BLOCK_COUNT_BITS * (2 - b))) & BLOCK_COUNT_MASK;
+			if (remaining < blockCount) break;
+			remaining -= blockCount;
+			index += BLOCK_WORDS;
+		}
+		for (; index < this.wordCount; index++)
+		{
+			long word = this.word(index);
+			int bits = Long.bitCount(word);
+			if (remaining < bits) return index * WORD_LENGTH + selectInWord(word, remaining);
+			remaining -= bits;
+		}
+		throw new IllegalStateException("Error, the BitStream has changed since the index was built, and has no set bit of "
+				+ "rank " + k);
+	}
+
+	/**
+	 * Returns the number of set bits in the stream
+	 * @return
+	 */
+	public int getCount()
+	{
+		return this.count;
+	}
+
+	/**
+	 * Returns a word of the stream, with any bits past the end of the stream cleared
+	 * @param index	The index of the word
+	 * @return	The word
+	 */
+	private long word(int index)
+	{
+		long word = this.storage.getWord(index);
+		int bits = this.dataSize - index * WORD_LENGTH;
+		return bits >= WORD_LENGTH ? word : word & ~(-1L >>> bits);
+	}
+
+	/**
+	 * Finds the position of a set bit within a word, counting from the most significant bit. Whole bytes are skipped by
+	 * popcount before the last byte is searched.
+	 * @param word	The word
+	 * @param rank	The rank of the set bit in the word, counting from 0
+	 * @return	The position of the bit in the word
+	 */
+	private static int selectInWord(long word, int rank)
+	{
+		int shift = WORD_LENGTH - BYTE_LENGTH;
+		while (true)
+		{
+			int bits = Long.bitCount((word >>> shift) & MAX_BYTE);
+			if (rank < bits) break;
+			rank -= bits;
+			shift -= BYTE_LENGTH;
+		}
+		for (int bit = shift + BYTE_LENGTH - 1; ; bit--)
+		{
+			if (((word >>> bit) & 1) != 0 && rank-- == 0) return WORD_LENGTH - 1 - bit;
+		}
+	}
+}
@@ -0,0 +1,519 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.util.Arrays;
+
+/**
+ * Compressed on-heap storage for streams that are mostly 0s or long runs. Following Roaring, the stream is split into
+ * containers of 65536 bits. A container that is all 0s takes no space, and the rest each take whichever form suits
+ * their bits:
+ * <ul>
+ * <li>an array of the positions of up to 4096 set bits, for sparse containers;</li>
+ * <li>a bitmap of 1024 words, for dense containers;</li>
+ * <li>a list of runs of set bits, for containers made of long runs.</li>
+ * </ul>
+ * Words are read and written in place, so readers and writers work on the storage without decompressing it. Array and
+ * bitmap containers change into one another as bits are written, and a container written to with any bits set is
+ * created when it is first needed. Run containers are only chosen when storage is built with
+ * {@link #of(BitStorage, int)}, which is how {@link BitStream#compact()} picks the smallest form for each container. The
+ * first write to a run container turns it into an array or a bitmap, so later writes stay cheap.
+ *
+ * @author AireL
+ */
+class SparseBitStorage extends BitStorage
+{
+	private static final int WORD_LENGTH = 64;
+	private static final int WORD_BYTES = 8;
+
+	/**
+	 * Words and bits in a container
+	 */
+	private static final int CONTAINER_SHIFT = 10;
+	private static final int CONTAINER_WORDS = 1 << CONTAINER_SHIFT;
+	private static final int CONTAINER_BITS = CONTAINER_WORDS * WORD_LENGTH;
+
+	/**
+	 * The most set bits an array container holds, past which a bitmap is smaller
+	 */
+	private static final int ARRAY_MAX = 4096;
+
+	/**
+	 * Containers by their index in the stream, null where every bit is 0
+	 */
+	private final Container[] containers;
+	private final int wordCount;
+
+	/**
+	 * Creates storage of a number of words, cleared to 0
+	 * @param wordCount	The number of words
+	 */
+	SparseBitStorage(int wordCount)
+	{
+		this.containers = new Container[(wordCount + CONTAINER_WORDS - 1) >>> CONTAINER_SHIFT];
+		this.wordCount = wordCount;
+	}
+
+	/**
+	 * Builds sparse storage holding a copy of other storage, with each container in its smallest form
+	 * @param storage	The storage to copy
+	 * @param wordCount	The number of words to copy. Words past the end of the storage are 0
+	 * @return	The sparse copy
+	 */
+	static SparseBitStorage of(BitStorage storage, int wordCount)
+	{
+		SparseBitStorage returnVal = new SparseBitStorage(wordCount);
+		int available = Math.min(wordCount, storage.getWordCount());
+		long[] words = new long[CONTAINER_WORDS];
+		for (int c = 0; c < returnVal.containers.length; c++)
+		{
+			int first = c << CONTAINER_SHIFT;
+			int n = Math.max(0, Math.min(CONTAINER_WORDS, available - first));
+			for (int i = 0; i < n; i++)
+			{
+				words[i] = storage.getWord(first + i);
+			}
+			Arrays.fill(words, n, CONTAINER_WORDS, 0L);
+			returnVal.containers[c] = Container.of(words, true);
+		}
+		return returnVal;
+	}
+
+	@Override
+	public long getWord(int index)
+	{
+		this.checkIndex(index);
+		Container container = this.containers[index >>> CONTAINER_SHIFT];
+		return container == null ? 0L : container.getWord(index & (CONTAINER_WORDS - 1));
+	}
+
+	@Override
+	public void setWord(int index, long word)
+	{
+		this.checkIndex(index);
+		int c = index >>> CONTAINER_SHIFT;
+		Container container = this.containers[c];
+		if (container == null)
+		{
+			if (word == 0L) return;
+			container = new ArrayContainer();
+		}
+		this.containers[c] = container.setWord(index & (CONTAINER_WORDS - 1), word);
+	}
+
+	@Override
+	public int getWordCount()
+	{
+		return this.wordCount;
+	}
+
+	@Override
+	public BitStorage copyOf(int wordCount)
+	{
+		SparseBitStorage returnVal = new SparseBitStorage(wordCount);
+		for (int c = 0, n = Math.min(this.containers.length, returnVal.containers.length); c < n; c++)
+		{
+			Container container = this.containers[c];
+			if (container == null) continue;
+			int kept = wordCount - (c << CONTAINER_SHIFT);
+			if (container instanceof RunContainer && kept >= CONTAINER_WORDS)
+			{
+				// Run containers are never changed in place, so the copy can share them
+				returnVal.containers[c] = container;
+				continue;
+			}
+			long[] words = container.toWords();
+			if (kept < CONTAINER_WORDS) Arrays.fill(words, kept, CONTAINER_WORDS, 0L);
+			returnVal.containers[c] = Container.of(words, false);
+		}
+		return returnVal;
+	}
+
+	@Override
+	public int nextSetBit(int bitIndex, int bitLimit)
+	{
+		for (int c = bitIndex / CONTAINER_BITS; c < this.containers.length && c * CONTAINER_BITS < bitLimit; c++)
+		{
+			Container container = this.containers[c];
+			if (container == null) continue;
+			int offset = container.nextSetBit(Math.max(0, bitIndex - c * CONTAINER_BITS));
+			if (offset >= 0)
+			{
+				int pos = c * CONTAINER_BITS + offset;
+				return pos < bitLimit ? pos : -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of bytes the containers take, not counting object headers
+	 * @return
+	 */
+	int getSizeInBytes()
+	{
+		int size = this.containers.length * 4;
+		for (Container container : this.containers)
+		{
+			if (container != null) size += container.getSizeInBytes();
+		}
+		return size;
+	}
+
+	/**
+	 * Checks that a word lies within the storage
+	 * @param index	The index of the word
+	 */
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= this.wordCount) throw new IndexOutOfBoundsException("Error, word " + index
+				+ " is out of bounds of storage of " + this.wordCount + " words");
+	}
+
+	/**
+	 * The bits of one 65536 bit part of the stream. Writing a word returns the container that should hold the result,
+	 * which may be a new container of another form, or null once every bit is 0.
+	 */
+	private abstract static class Container
+	{
+		/**
+		 * Builds a container holding a run of words in its smallest form
+		 * @param words	The words of the container, a full container's worth
+		 * @param allowRuns	True to allow a run container, false to choose only between an array and a bitmap
+		 * @return	The container, or null if every bit is 0
+		 */
+		static Container of(long[] words, boolean allowRuns)
+		{
+			int cardinality = 0;
+			int runs = 0;
+			long previous = 0L;
+			for (long word : words)
+			{
+				cardinality += Long.bitCount(word);
+				runs += Long.bitCount(word & ~((word >>> 1) | (previous << (WORD_LENGTH - 1))));
+				previous = word;
+			}
+			if (cardinality == 0) return null;
+			int arraySize = cardinality <= ARRAY_MAX ? cardinality * 2 : Integer.MAX_VALUE;
+			if (allowRuns && runs * 4 < Math.min(arraySize, CONTAINER_WORDS * WORD_BYTES)) return new RunContainer(words, runs);
+			if (cardinality <= ARRAY_MAX) return new ArrayContainer(words, cardinality);
+			return new BitmapContainer(words.clone(), cardinality);
+		}
+
+		/**
+		 * Gets a word of the container
+		 * @param index	The index of the word in the container
+		 * @return	The word
+		 */
+		abstract long getWord(int index);
+
+		/**
+		 * Sets a word of the container
+		 * @param index	The index of the word in the container
+		 * @param word	The word to set
+		 * @return	The container now holding the bits
+		 */
+		abstract Container setWord(int index, long word);
+
+		/**
+		 * Finds the next set bit in the container
+		 * @param offset	The position in the container to search from
+		 * @return	The position of the set bit, or -1 if there is none
+		 */
+		abstract int nextSetBit(int offset);
+
+		/**
+		 * Returns the number of bytes the container's data takes
+		 * @return
+		 */
+		abstract int getSizeInBytes();
+
+		/**
+		 * Copies the container out as words
+		 * @return	A full container's worth of words
+		 */
+		long[] toWords()
+		{
+			long[] words = new long[CONTAINER_WORDS];
+			for (int i = 0; i < CONTAINER_WORDS; i++)
+			{
+				words[i] = this.getWord(i);
+			}
+			return words;
+		}
+	}
+
+	/**
+	 * A sorted array of the positions of set bits
+	 */
+	private static final class ArrayContainer extends Container
+	{
+		private char[] values;
+		private int size;
+
+		ArrayContainer()
+		{
+			this.values = new char[4];
+		}
+
+		ArrayContainer(long[] words, int cardinality)
+		{
+			this.values = new char[cardinality];
+			for (int i = 0; i < CONTAINER_WORDS; i++)
+			{
+				this.size = this.fill(this.size, i, words[i]);
+			}
+		}
+
+		@Override
+		long getWord(int index)
+		{
+			long word = 0L;
+			int end = (index + 1) * WORD_LENGTH;
+			for (int i = this.lowerBound(index * WORD_LENGTH); i < this.size && this.values[i] < end; i++)
+			{
+				word |= Long.MIN_VALUE >>> (this.values[i] & (WORD_LENGTH - 1));
+			}
+			return word;
+		}
+
+		@Override
+		Container setWord(int index, long word)
+		{
+			int start = this.lowerBound(index * WORD_LENGTH);
+			int end = this.lowerBound((index + 1) * WORD_LENGTH);
+			int added = Long.bitCount(word);
+			int newSize = this.size - (end - start) + added;
+			if (newSize == 0) return null;
+			if (newSize > ARRAY_MAX)
+			{
+				return new BitmapContainer(this.toWords(), this.size).setWord(index, word);
+			}
+			if (newSize > this.values.length)
+			{
+				this.values = Arrays.copyOf(this.values, Math.min(ARRAY_MAX, Math.max(newSize, this.values.length * 2)));
+			}
+			System.arraycopy(this.values, end, this.values, start + added, this.size - end);
+			this.fill(start, index, word);
+			this.size = newSize;
+			return this;
+		}
+
+		@Override
+		int nextSetBit(int offset)
+		{
+			int i = this.lowerBound(offset);
+			return i < this.size ? this.values[i] : -1;
+		}
+
+		@Override
+		int getSizeInBytes()
+		{
+			return this.values.length * 2;
+		}
+
+		/**
+		 * Writes the positions of the set bits of a word into the array
+		 * @param i		The index in the array to write from
+		 * @param index	The index of the word in the container
+		 * @param word	The word
+		 * @return	The index in the array after the last position written
+		 */
+		private int fill(int i, int index, long word)
+		{
+			while (word != 0L)
+			{
+				int bit = Long.numberOfLeadingZeros(word);
+				this.values[i++] = (char) (index * WORD_LENGTH + bit);
+				word &= ~(Long.MIN_VALUE >>> bit);
+			}
+			return i;
+		}
+
+		/**
+		 * Finds the first set bit at or after a position
+		 * @param offset	The position in the container
+		 * @return	The index in the array of the set bit, or the size of the array if there is none
+		 */
+		private int lowerBound(int offset)
+		{
+			int low = 0;
+			int high = this.size;
+			while (low < high)
+			{
+				int middle = (low + high) >>> 1;
+				if (this.values[middle] < offset)
+				{
+					low = middle + 1;
+				}
+				else
+				{
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+
+	/**
+	 * A plain bitmap, for containers too dense for an array
+	 */
+	private static final class BitmapContainer extends Container
+	{
+		private final long[] words;
+		private int cardinality;
+
+		BitmapContainer(long[] words, int cardinality)
+		{
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		long getWord(int index)
+		{
+			return this.words[index];
+		}
+
+		@Override
+		Container setWord(int index, long word)
+		{
+			this.cardinality += Long.bitCount(word) - Long.bitCount(this.words[index]);
+			this.words[index] = word;
+			if (this.cardinality == 0) return null;
+			// Shrinking to an array only well below the limit keeps a container near it from changing back and forth
+			if (this.cardinality <= ARRAY_MAX / 2) return new ArrayContainer(this.words, this.cardinality);
+			return this;
+		}
+
+		@Override
+		int nextSetBit(int offset)
+		{
+			int index = offset / WORD_LENGTH;
+			long word = this.words[index] & (-1L >>> (offset & (WORD_LENGTH - 1)));
+			while (word == 0L)
+			{
+				if (++index == CONTAINER_WORDS) return -1;
+				word = this.words[index];
+			}
+			return index * WORD_LENGTH + Long.numberOfLeadingZeros(word);
+		}
+
+		@Override
+		int getSizeInBytes()
+		{
+			return CONTAINER_WORDS * WORD_BYTES;
+		}
+
+		@Override
+		long[] toWords()
+		{
+			return this.words.clone();
+		}
+	}
+
+	/**
+	 * Runs of set bits, each a start position and a length. Run containers are never changed in place; writing to one
+	 * turns it into an array or a bitmap.
+	 */
+	private static final class RunContainer extends Container
+	{
+		private final char[] starts;
+
+		/**
+		 * The length of each run less 1, so a run of the whole container fits in a char
+		 */
+		private final char[] lengths;
+
+		RunContainer(long[] words, int runs)
+		{
+			this.starts = new char[runs];
+			this.lengths = new char[runs];
+			int run = 0;
+			int start = -1;
+			for (int i = 0; i < CONTAINER_WORDS; i++)
+			{
+				long word = words[i];
+				for (int bit = 0; bit < WORD_LENGTH; )
+				{
+					if (start < 0)
+					{
+						long rest = word << bit;
+						if (rest == 0L) break;
+						bit += Long.numberOfLeadingZeros(rest);
+						start = i * WORD_LENGTH + bit;
+					}
+					else
+					{
+						long rest = ~word << bit;
+						if (rest == 0L) break;
+						bit += Long.numberOfLeadingZeros(rest);
+						this.starts[run] = (char) start;
+						this.lengths[run++] = (char) (i * WORD_LENGTH + bit - start - 1);
+						start = -1;
+					}
+				}
+			}
+			if (start >= 0)
+			{
+				this.starts[run] = (char) start;
+				this.lengths[run] = (char) (CONTAINER_BITS - start - 1);
+			}
+		}
+
+		@Override
+		long getWord(int index)
+		{
+			int first = index * WORD_LENGTH;
+			long word = 0L;
+			for (int i = this.firstEndingAfter(first); i < this.starts.length && this.starts[i] < first + WORD_LENGTH; i++)
+			{
+				int from = Math.max(this.starts[i] - first, 0);
+				int to = Math.min(this.starts[i] + this.lengths[i] + 1 - first, WORD_LENGTH);
+				word |= (-1L >>> from) & (-1L << (WORD_LENGTH - to));
+			}
+			return word;
+		}
+
+		@Override
+		Container setWord(int index, long word)
+		{
+			return Container.of(this.toWords(), false).setWord(index, word);
+		}
+
+		@Override
+		int nextSetBit(int offset)
+		{
+			int i = this.firstEndingAfter(offset);
+			return i < this.starts.length ? Math.max(offset, this.starts[i]) : -1;
+		}
+
+		@Override
+		int getSizeInBytes()
+		{
+			return this.starts.length * 4;
+		}
+
+		/**
+		 * Finds the first run that ends at or after a position
+		 * @param offset	The position in the container
+		 * @return	The index of the run, or the number of runs if there is none
+		 */
+		private int firstEndingAfter(int offset)
+		{
+			int low = 0;
+			int high = this.starts.length;
+			while (low < high)
+			{
+				int middle = (low + high) >>> 1;
+				if (this.starts[middle] + this.lengths[middle] < offset)
+				{
+					low = middle + 1;
+				}
+				else
+				{
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A reader that decodes a bitstream as it arrives from an InputStream or ReadableByteChannel. Bytes are read into a fixed
+ * size buffer, which is refilled as reads consume it, so memory use does not depend on the length of the input and decoding
+ * can start as soon as the first bytes arrive. Bytes are taken most significant bit first, as with {@link BitStream#wrap}.
+ * <p>
+ * Reads throw an EOFException if the input ends before the bits asked for. Sources are expected to block until data is
+ * available.
+ *
+ * @author AireL
+ */
+public class StreamingBitStreamReader implements Closeable
+{
+	private static final int BYTE_LENGTH = 8;
+	private static final int WORD_LENGTH = 64;
+	private static final int WORD_BYTES = 8;
+	private static final int MAX_BYTE = 0xFF;
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * Smallest usable buffer. A 64 bit read at any bit offset spans 9 bytes.
+	 */
+	private static final int MIN_BUFFER_SIZE = 16;
+
+	private final InputStream in;
+	private final ReadableByteChannel channel;
+
+	/**
+	 * The buffered bytes, and a big-endian view over them for whole word reads
+	 */
+	private final byte[] buffer;
+	private final ByteBuffer view;
+
+	/**
+	 * The number of valid bytes in the buffer
+	 */
+	private int limit = 0;
+
+	/**
+	 * The bit position of the reader within the buffer
+	 */
+	private int bitPos = 0;
+
+	/**
+	 * The number of stream bits discarded from the front of the buffer so far
+	 */
+	private long discarded = 0;
+
+	/**
+	 * Whether the source has reported end of stream
+	 */
+	private boolean endOfInput = false;
+
+	/**
+	 * General constructor, reads from an InputStream with the default buffer size
+	 * @param in	The stream to read
+	 */
+	public StreamingBitStreamReader(InputStream in)
+	{
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Reads from an InputStream
+	 * @param in			The stream to read
+	 * @param bufferSize	The size of the read buffer in bytes
+	 */
+	public StreamingBitStreamReader(InputStream in, int bufferSize)
+	{
+		this(in, null, bufferSize);
+	}
+
+	/**
+	 * Reads from a channel with the default buffer size
+	 * @param channel	The channel to read
+	 */
+	public StreamingBitStreamReader(ReadableByteChannel channel)
+	{
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Reads from a channel
+	 * @param channel		The channel to read
+	 * @param bufferSize	The size of the read buffer in bytes
+	 */
+	public StreamingBitStreamReader(ReadableByteChannel channel, int bufferSize)
+	{
+		this(null, channel, bufferSize);
+	}
+
+	private StreamingBitStreamReader(InputStream in, ReadableByteChannel channel, int bufferSize)
+	{
+		if (bufferSize < MIN_BUFFER_SIZE) throw new IllegalArgumentException("Error, bufferSize: " + bufferSize +
+				" is less than the minimum of " + MIN_BUFFER_SIZE);
+		this.in = in;
+		this.channel = channel;
+		this.buffer = new byte[bufferSize];
+		this.view = ByteBuffer.wrap(this.buffer);
+	}
+
+	/**
+	 * private method to refill the buffer. Consumed bytes are dropped from the front, and as much as the source has ready
+	 * is read in behind the rest.
+	 * @throws IOException
+	 */
+	private void refill() throws IOException
+	{
+		int start = this.bitPos >>> 3;
+		System.arraycopy(this.buffer, start, this.buffer, 0, this.limit - start);
+		this.limit -= start;
+		this.bitPos -= start * BYTE_LENGTH;
+		this.discarded += (long) start * BYTE_LENGTH;
+		int read;
+		if (this.in != null)
+		{
+			read = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+		}
+		else
+		{
+			this.view.limit(this.buffer.length);
+			this.view.position(this.limit);
+			read = this.channel.read(this.view);
+			this.view.clear();
+		}
+		if (read < 0)
+		{
+			this.endOfInput = true;
+		}
+		else
+		{
+			this.limit += read;
+		}
+	}
+
+	/**
+	 * private method to make sure enough bits are buffered for a read
+	 * @param bits	The number of bits needed
+	 * @throws IOException
+	 */
+	private void ensure(int bits) throws IOException
+	{
+		while (this.limit * BYTE_LENGTH - this.bitPos < bits)
+		{
+			if (this.endOfInput) throw new EOFException("Error, reading " + bits + " bits will go past the end of the stream. There are "
+					+ (this.limit * BYTE_LENGTH - this.bitPos) + " bits remaining");
+			this.refill();
+		}
+	}
+
+	/**
+	 * private method to read up to 64 bits from the buffer and move the reader on. The first bit read is the most
+	 * significant bit of the result
+	 * @param bits	Number of bits to read, from 1 to 64
+	 * @return	Returns the bits read, right aligned
+	 * @throws IOException
+	 */
+	private long readBits(int bits) throws IOException
+	{
+		this.ensure(bits);
+		int bytePos = this.bitPos >>> 3;
+		int offset = this.bitPos & (BYTE_LENGTH - 1);
+		long value;
+		if (bytePos + WORD_BYTES <= this.limit)
+		{
+			value = this.view.getLong(bytePos) << offset;
+			if (offset + bits > WORD_LENGTH)
+			{
+				value |= (this.buffer[bytePos + WORD_BYTES] & MAX_BYTE) >>> (BYTE_LENGTH - offset);
+			}
+		}
+		else
+		{
+			value = 0L;
+			for (int i = 0; i < WORD_BYTES; i++)
+			{
+				value <<= BYTE_LENGTH;
+				if (bytePos + i < this.limit) value |= this.buffer[bytePos + i] & MAX_BYTE;
+			}
+			value <<= offset;
+		}
+		this.bitPos += bits;
+		return value >>> (WORD_LENGTH - bits);
+	}
+
+	/**
+	 * reads and returns a boolean
+	 * @return	A boolean - true if the bit is 1, false if the bit is 0
+	 * @throws IOException
+	 */
+	public boolean readBoolean() throws IOException
+	{
+		return this.readBits(1) != 0;
+	}
+
+	/**
+	 * Reads and returns x bits as a byte
+	 * @param length	The number of bits to read
+	 * @return	A byte containing the number of read bits
+	 * @throws IOException
+	 */
+	public byte readByte(int length) throws IOException
+	{
+		if (length < 1 || length > 8) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for a byte");
+		return (byte) (this.readBits(length) << (BYTE_LENGTH - length));
+	}
+
+	/**
+	 * Reads and returns x bits as a byte array. Byte aligned reads are copied straight out of the buffer.
+	 * @param length	The number of bits to read
+	 * @return	A byte array of length (ceil (length / 8))
+	 * @throws IOException
+	 */
+	public byte[] readBytes(int length) throws IOException
+	{
+		if (length < 1) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for a byte array");
+		byte[] returnVal = new byte[(length + BYTE_LENGTH - 1) / BYTE_LENGTH];
+		int wholeBytes = length / BYTE_LENGTH;
+		if (this.bitPos % BYTE_LENGTH == 0)
+		{
+			int copied = 0;
+			while (copied < wholeBytes)
+			{
+				if (this.limit * BYTE_LENGTH == this.bitPos) this.ensure(BYTE_LENGTH);
+				int bytes = Math.min(this.limit - this.bitPos / BYTE_LENGTH, wholeBytes - copied);
+				System.arraycopy(this.buffer, this.bitPos / BYTE_LENGTH, returnVal, copied, bytes);
+				copied += bytes;
+				this.bitPos += bytes * BYTE_LENGTH;
+			}
+		}
+		else
+		{
+			int i = 0;
+			for (; i + WORD_BYTES <= wholeBytes; i += WORD_BYTES)
+			{
+				long word = this.readBits(WORD_LENGTH);
+				for (int j = WORD_BYTES - 1; j >= 0; j--)
+				{
+					returnVal[i + j] = (byte) word;
+					word >>>= BYTE_LENGTH;
+				}
+			}
+			for (; i < wholeBytes; i++)
+			{
+				returnVal[i] = (byte) this.readBits(BYTE_LENGTH);
+			}
+		}
+		int remainder = length % BYTE_LENGTH;
+		if (remainder > 0)
+		{
+			returnVal[wholeBytes] = (byte) (this.readBits(remainder) << (BYTE_LENGTH - remainder));
+		}
+		return returnVal;
+	}
+
+	/**
+	 * Reads and returns an integer, using a set number of bits
+	 * @param length	The number of bits to read
+	 * @return an integer compromising the number of bits read
+	 * @throws IOException
+	 */
+	public int readInt(int length) throws IOException
+	{
+		if (length < 1 || length > BYTE_LENGTH * 4) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for an integer");
+		return (int) this.readBits(length);
+	}
+
+	/**
+	 * Reads and returns a long, using a set number of bits
+	 * @param length	The number of bits to read
+	 * @return a long compromising the number of bits read
+	 * @throws IOException
+	 */
+	public long readLong(int length) throws IOException
+	{
+		if (length < 1 || length > 8 * BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + length +
+				" is out of range for a Long");
+		return this.readBits(length);
+	}
+
+	/**
+	 * Reads and returns a char, using 16 bits
+	 * @return	A char.
+	 * @throws IOException
+	 */
+	public char readChar() throws IOException
+	{
+		return (char) this.readBits(16);
+	}
+
+	/**
+	 * Reads and returns a string, using 16 bits per character
+	 * @param bits	The number of bits to read
+	 * @return	A string of length (bits / 16)
+	 * @throws IOException
+	 */
+	public String readString(int bits) throws IOException
+	{
+		if (bits % (BYTE_LENGTH * 2) != 0) throw new IllegalArgumentException("Error: Bits must be a multiple of 16");
+		return new String(this.readBytes(bits));
+	}
+
+	/**
+	 * Skips the next bits in the reader
+	 * @param bits	The number of bits to skip
+	 * @throws IOException
+	 */
+	public void skip(long bits) throws IOException
+	{
+		while (bits > 0)
+		{
+			int available = this.limit * BYTE_LENGTH - this.bitPos;
+			if (available == 0)
+			{
+				this.ensure(1);
+				continue;
+			}
+			int skipped = (int) Math.min(available, bits);
+			this.bitPos += skipped;
+			bits -= skipped;
+		}
+	}
+
+	/**
+	 * Returns whether the input has ended with no bits left to read. Blocks until the source has data or reports end of
+	 * stream.
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean isEndOfStream() throws IOException
+	{
+		while (this.limit * BYTE_LENGTH == this.bitPos && !this.endOfInput)
+		{
+			this.refill();
+		}
+		return this.limit * BYTE_LENGTH == this.bitPos;
+	}
+
+	/**
+	 * Returns the current location of the reader, as the number of bits read or skipped since it was built
+	 * @return
+	 */
+	public long getCurrentLocation()
+	{
+		return this.discarded + this.bitPos;
+	}
+
+	/**
+	 * Closes the underlying stream or channel
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (this.in != null)
+		{
+			this.in.close();
+		}
+		else
+		{
+			this.channel.close();
+		}
+	}
+}
@@ -0,0 +1,411 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A writer that encodes a bitstream straight to an OutputStream or WritableByteChannel. Appends are gathered in a 64 bit
+ * buffer, whole words are moved into a fixed size byte buffer, and the byte buffer is written out each time it fills. Memory
+ * use does not depend on how much is written, and output starts as soon as the first buffer fills. Bytes are written most
+ * significant bit first, as {@link StreamingBitStreamReader} and {@link BitStream#wrap} expect.
+ * <p>
+ * {@link #flush()} writes out every complete byte and carries a trailing partial byte over to the next append.
+ * {@link #close()} pads a trailing partial byte with 0s before writing it.
+ *
+ * @author AireL
+ */
+public class StreamingBitStreamWriter implements Closeable, Flushable
+{
+	private static final int BYTE_LENGTH = 8;
+	private static final int WORD_LENGTH = 64;
+	private static final int WORD_BYTES = 8;
+	private static final int MAX_BYTE = 0xFF;
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private final OutputStream out;
+	private final WritableByteChannel channel;
+
+	/**
+	 * The bytes waiting to be written, and a big-endian view over them for whole word writes
+	 */
+	private final byte[] buffer;
+	private final ByteBuffer view;
+
+	/**
+	 * The number of bytes waiting in the buffer
+	 */
+	private int position = 0;
+
+	/**
+	 * The bits appended since the last whole word, held from the most significant end
+	 */
+	private long bitBuffer = 0L;
+	private int bitCount = 0;
+
+	/**
+	 * The number of bits appended before the bit buffer
+	 */
+	private long written = 0;
+
+	/**
+	 * General constructor, writes to an OutputStream with the default buffer size
+	 * @param out	The stream to write to
+	 */
+	public StreamingBitStreamWriter(OutputStream out)
+	{
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Writes to an OutputStream
+	 * @param out			The stream to write to
+	 * @param bufferSize	The size of the write buffer in bytes
+	 */
+	public StreamingBitStreamWriter(OutputStream out, int bufferSize)
+	{
+		this(out, null, bufferSize);
+	}
+
+	/**
+	 * Writes to a channel with the default buffer size
+	 * @param channel	The channel to write to
+	 */
+	public StreamingBitStreamWriter(WritableByteChannel channel)
+	{
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Writes to a channel
+	 * @param channel		The channel to write to
+	 * @param bufferSize	The size of the write buffer in bytes
+	 */
+	public StreamingBitStreamWriter(WritableByteChannel channel, int bufferSize)
+	{
+		this(null, channel, bufferSize);
+	}
+
+	private StreamingBitStreamWriter(OutputStream out, WritableByteChannel channel, int bufferSize)
+	{
+		if (bufferSize < WORD_BYTES) throw new IllegalArgumentException("Error, bufferSize: " + bufferSize +
+				" is less than the minimum of " + WORD_BYTES);
+		this.out = out;
+		this.channel = channel;
+		this.buffer = new byte[bufferSize - bufferSize % WORD_BYTES];
+		this.view = ByteBuffer.wrap(this.buffer);
+	}
+
+	/**
+	 * private method to append up to 64 bits through the bit buffer
+	 * @param data		The bits to append, right aligned
+	 * @param bitLength	The number of bits to append, from 1 to 64
+	 * @throws IOException
+	 */
+	private void appendBits(long data, int bitLength) throws IOException
+	{
+		data &= -1L >>> (WORD_LENGTH - bitLength);
+		int free = WORD_LENGTH - this.bitCount;
+		if (bitLength < free)
+		{
+			this.bitBuffer |= data << (free - bitLength);
+			this.bitCount += bitLength;
+		}
+		else
+		{
+			int spill = bitLength - free;
+			this.putWord(this.bitBuffer | (data >>> spill));
+			this.bitBuffer = spill == 0 ? 0L : data << (WORD_LENGTH - spill);
+			this.bitCount = spill;
+		}
+	}
+
+	/**
+	 * private method to move a whole word into the byte buffer, writing the buffer out first if it is full
+	 * @param word	The word to move
+	 * @throws IOException
+	 */
+	private void putWord(long word) throws IOException
+	{
+		if (this.position + WORD_BYTES > this.buffer.length) this.drain();
+		this.view.putLong(this.position, word);
+		this.position += WORD_BYTES;
+		this.written += WORD_LENGTH;
+	}
+
+	/**
+	 * private method to write the byte buffer out to the stream or channel
+	 * @throws IOException
+	 */
+	private void drain() throws IOException
+	{
+		if (this.out != null)
+		{
+			this.out.write(this.buffer, 0, this.position);
+		}
+		else
+		{
+			this.view.limit(this.position);
+			this.view.position(0);
+			while (this.view.hasRemaining())
+			{
+				this.channel.write(this.view);
+			}
+			this.view.clear();
+		}
+		this.position = 0;
+	}
+
+	/**
+	 * Appends a single bit
+	 * @param data	True to append a 1, false to append a 0
+	 * @throws IOException
+	 */
+	public void appendBit(boolean data) throws IOException
+	{
+		this.appendBits(data ? 1L : 0L, 1);
+	}
+
+	/**
+	 * Appends the first bits of a byte
+	 * @param data		The data to append
+	 * @param bitLength	The amount of bits to append, taken from the most significant end
+	 * @throws IOException
+	 */
+	public void appendByte(byte data, int bitLength) throws IOException
+	{
+		if (bitLength < 1 || bitLength > BYTE_LENGTH) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a byte");
+		this.appendBits((data & MAX_BYTE) >>> (BYTE_LENGTH - bitLength), bitLength);
+	}
+
+	/**
+	 * Appends the low bits of an integer
+	 * @param data		The data to append
+	 * @param bitLength	The amount of bits to append
+	 * @throws IOException
+	 */
+	public void appendInt(int data, int bitLength) throws IOException
+	{
+		if (bitLength < 1 || bitLength > BYTE_LENGTH*4) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for an integer");
+		this.appendBits(data, bitLength);
+	}
+
+	/**
+	 * Appends the low bits of a long
+	 * @param data		The data to append
+	 * @param bitLength	The amount of bits to append
+	 * @throws IOException
+	 */
+	public void appendLong(long data, int bitLength) throws IOException
+	{
+		if (bitLength < 1 || bitLength > BYTE_LENGTH*8) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a long");
+		this.appendBits(data, bitLength);
+	}
+
+	/**
+	 * Appends a char, using 16 bits
+	 * @param data	The data to append
+	 * @throws IOException
+	 */
+	public void appendChar(char data) throws IOException
+	{
+		this.appendBits(data, 2 * BYTE_LENGTH);
+	}
+
+	/**
+	 * Appends the first bits of a byte array. When the stream is byte aligned the whole bytes are copied into the buffer,
+	 * or written straight out if they would not fit in it.
+	 * @param data		The data to append
+	 * @param bitLength	The amount of bits to append
+	 * @throws IOException
+	 */
+	public void append(byte[] data, int bitLength) throws IOException
+	{
+		if (bitLength < 1 || bitLength > (BYTE_LENGTH * data.length)) throw new IllegalArgumentException("Error, bitLength: " + bitLength + " is out of range for a byte array of length: " + data.length);
+		if (this.bitCount % BYTE_LENGTH == 0 && bitLength >= WORD_LENGTH)
+		{
+			this.appendAligned(data, bitLength);
+			return;
+		}
+		int i = 0;
+		for (int words = bitLength / WORD_LENGTH; words > 0; words--)
+		{
+			long word = 0L;
+			for (int end = i + WORD_BYTES; i < end; i++)
+			{
+				word = (word << BYTE_LENGTH) | (data[i] & MAX_BYTE);
+			}
+			this.appendBits(word, WORD_LENGTH);
+		}
+		int bitsRemaining = bitLength % WORD_LENGTH;
+		for (; bitsRemaining >= BYTE_LENGTH; bitsRemaining -= BYTE_LENGTH)
+		{
+			this.appendBits(data[i++], BYTE_LENGTH);
+		}
+		if (bitsRemaining > 0)
+		{
+			this.appendBits((data[i] & MAX_BYTE) >>> (BYTE_LENGTH - bitsRemaining), bitsRemaining);
+		}
+	}
+
+	/**
+	 * private method to append a byte array at a byte aligned position, copying whole bytes rather than shifting them
+	 * @param data		The data to append
+	 * @param bitLength	The amount of bits to append
+	 * @throws IOException
+	 */
+	private void appendAligned(byte[] data, int bitLength) throws IOException
+	{
+		this.moveWholeBytes();
+		int wholeBytes = bitLength / BYTE_LENGTH;
+		if (wholeBytes >= this.buffer.length)
+		{
+			this.drain();
+			if (this.out != null)
+			{
+				this.out.write(data, 0, wholeBytes);
+			}
+			else
+			{
+				ByteBuffer direct = ByteBuffer.wrap(data, 0, wholeBytes);
+				while (direct.hasRemaining())
+				{
+					this.channel.write(direct);
+				}
+			}
+		}
+		else
+		{
+			int copied = 0;
+			while (copied < wholeBytes)
+			{
+				if (this.position == this.buffer.length) this.drain();
+				int bytes = Math.min(this.buffer.length - this.position, wholeBytes - copied);
+				System.arraycopy(data, copied, this.buffer, this.position, bytes);
+				this.position += bytes;
+				copied += bytes;
+			}
+		}
+		this.written += (long) wholeBytes * BYTE_LENGTH;
+		int remainder = bitLength % BYTE_LENGTH;
+		if (remainder > 0)
+		{
+			this.appendBits((data[wholeBytes] & MAX_BYTE) >>> (BYTE_LENGTH - remainder), remainder);
+		}
+	}
+
+	/**
+	 * private method to move the whole bytes held in the bit buffer into the byte buffer, leaving any partial byte
+	 * @throws IOException
+	 */
+	private void moveWholeBytes() throws IOException
+	{
+		int wholeBytes = this.bitCount / BYTE_LENGTH;
+		if (wholeBytes > 0)
+		{
+			if (this.position + WORD_BYTES > this.buffer.length) this.drain();
+			this.view.putLong(this.position, this.bitBuffer);
+			this.position += wholeBytes;
+			this.written += wholeBytes * BYTE_LENGTH;
+			this.bitBuffer <<= wholeBytes * BYTE_LENGTH;
+			this.bitCount -= wholeBytes * BYTE_LENGTH;
+		}
+	}
+
+	/**
+	 * Appends a string, as the bytes of the platform's default charset
+	 * @param data	The data to append
+	 * @throws IOException
+	 */
+	public void append(String data) throws IOException
+	{
+		if(data.length() < 1) throw new IllegalArgumentException("Error, the dataset is empty");
+		byte[] bytes = data.getBytes();
+		this.append(bytes, bytes.length * BYTE_LENGTH);
+	}
+
+	/**
+	 * Appends the first bits of a BitStream
+	 * @param data		The data to append
+	 * @param bitLength	The number of bits to append
+	 * @throws IOException
+	 */
+	public void append(BitStream data, int bitLength) throws IOException
+	{
+		if (bitLength < 1 || bitLength > data.getDataSize()) throw new IllegalArgumentException("Error, bitLength: " + bitLength +
+				" is out of range for a BitStream of length " + data.getDataSize());
+		data.sync();
+		for (int pos = 0; pos < bitLength; pos += WORD_LENGTH)
+		{
+			int chunk = Math.min(WORD_LENGTH, bitLength - pos);
+			this.appendBits(data.getBits(pos, chunk), chunk);
+		}
+	}
+
+	/**
+	 * Pads the stream with a number of 0s
+	 * @param bits	The number of 0s to add
+	 * @throws IOException
+	 */
+	public void pad(long bits) throws IOException
+	{
+		for (; bits > 0; bits -= WORD_LENGTH)
+		{
+			this.appendBits(0L, (int) Math.min(bits, WORD_LENGTH));
+		}
+	}
+
+	/**
+	 * Pads the stream with 0s up to the next byte boundary
+	 * @throws IOException
+	 */
+	public void padToByte() throws IOException
+	{
+		int partial = this.bitCount % BYTE_LENGTH;
+		if (partial > 0) this.appendBits(0L, BYTE_LENGTH - partial);
+	}
+
+	/**
+	 * Returns the number of bits appended so far
+	 * @return
+	 */
+	public long getCurrentLocation()
+	{
+		return this.written + this.bitCount;
+	}
+
+	/**
+	 * Writes out every complete byte appended so far and flushes the stream or channel. A trailing partial byte stays
+	 * buffered and is completed by later appends.
+	 * @throws IOException
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		this.moveWholeBytes();
+		this.drain();
+		if (this.out != null) this.out.flush();
+	}
+
+	/**
+	 * Pads any trailing partial byte with 0s, writes everything out and closes the stream or channel
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		this.padToByte();
+		this.flush();
+		if (this.out != null)
+		{
+			this.out.close();
+		}
+		else
+		{
+			this.channel.close();
+		}
+	}
+}
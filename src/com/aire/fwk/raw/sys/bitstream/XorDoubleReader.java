@@ -0,0 +1,130 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+/**
+ * Decompresses a series of doubles written by a {@link XorDoubleWriter}.
+ * <p>
+ * The reader takes values from the underlying reader's current location until it reaches the end of the series written
+ * by {@link XorDoubleWriter#finish()}, and leaves the reader just after it. A series that runs into the end of the stream
+ * without being finished is reported as corrupt.
+ *
+ * @author AireL
+ */
+public class XorDoubleReader
+{
+	private static final int WORD_LENGTH = 64;
+
+	private final BitStreamReader in;
+
+	/**
+	 * The bits of the last value read
+	 */
+	private long previous;
+
+	/**
+	 * Whether the first value has been read
+	 */
+	private boolean started = false;
+
+	/**
+	 * Whether the end of the series has been read
+	 */
+	private boolean ended = false;
+
+	/**
+	 * The window of meaningful bits last described
+	 */
+	private int trailing = -1;
+	private int length = 0;
+
+	/**
+	 * General constructor, decodes from a reader
+	 * @param in	The reader to take values from
+	 */
+	public XorDoubleReader(BitStreamReader in)
+	{
+		this.in = in;
+	}
+
+	/**
+	 * Returns whether there are values left to read
+	 * @return
+	 */
+	public boolean hasNext()
+	{
+		if (this.ended) return false;
+		if (this.in.getCurrentLocation() >= this.in.getDataSize()) throw new IllegalStateException("Error, the series ends "
+				+ "at position " + this.in.getCurrentLocation() + " without being finished");
+		if (!this.started)
+		{
+			if (this.in.peekBits(1) == 0L) return true;
+			this.in.consume(1);
+		}
+		else
+		{
+			if (this.in.peekBits(XorDoubleWriter.TERMINATOR_BITS) != XorDoubleWriter.TERMINATOR) return true;
+			this.in.consume(XorDoubleWriter.TERMINATOR_BITS);
+		}
+		this.ended = true;
+		return false;
+	}
+
+	/**
+	 * Reads the next value of the series
+	 * @return	The value read
+	 */
+	public double read()
+	{
+		if (!this.hasNext()) throw new IllegalStateException("Error, there are no values left in the series");
+		if (!this.started)
+		{
+			this.in.consume(1);
+			this.previous = this.in.readLong(WORD_LENGTH);
+			this.started = true;
+		}
+		else if (this.in.readBoolean())
+		{
+			if (this.in.readBoolean())
+			{
+				int header = this.in.readInt(XorDoubleWriter.LEADING_BITS + XorDoubleWriter.LENGTH_BITS);
+				int leading = header >>> XorDoubleWriter.LENGTH_BITS;
+				this.length = header & (WORD_LENGTH - 1);
+				if (this.length == 0) this.length = WORD_LENGTH;
+				this.trailing = WORD_LENGTH - leading - this.length;
+				if (this.trailing < 0) throw new IllegalStateException("Error, the window of " + leading + " leading 0s and "
+						+ this.length + " bits at position " + this.in.getCurrentLocation() + " does not fit in a double");
+			}
+			else if (this.trailing < 0)
+			{
+				throw new IllegalStateException("Error, the value at position " + this.in.getCurrentLocation()
+						+ " reuses a window that has not been described");
+			}
+			this.previous ^= this.in.readLong(this.length) << this.trailing;
+		}
+		return Double.longBitsToDouble(this.previous);
+	}
+
+	/**
+	 * Reads the next value of the series as a float
+	 * @return	The value read
+	 */
+	public float readFloat()
+	{
+		return (float) this.read();
+	}
+
+	/**
+	 * Reads the next values of the series
+	 * @param dest		The array to read into
+	 * @param offset	The offset in the array of the first value
+	 * @param count		The number of values to read
+	 */
+	public void read(double[] dest, int offset, int count)
+	{
+		if (offset < 0 || count < 0 || offset + count > dest.length || offset + count < 0) throw new IndexOutOfBoundsException("Error, "
+				+ count + " values from offset " + offset + " do not fit in an array of length: " + dest.length);
+		for (int end = offset + count; offset < end; offset++)
+		{
+			dest[offset] = this.read();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+/**
+ * Compresses a series of doubles, such as metric samples, using the XOR scheme of Facebook's Gorilla. The first value is
+ * written in full after a 0. Each value after it is XORed with the one before, and as neighbouring samples tend to share their sign,
+ * exponent and high mantissa bits, the result is mostly 0s:
+ * <ul>
+ * <li>a repeated value is written as a single 0</li>
+ * <li>otherwise a 1 is written, followed by a 0 and the meaningful bits of the XOR, if they fit in the window of
+ * meaningful bits last described</li>
+ * <li>or else by a 1, the number of leading 0s in 5 bits, the number of meaningful bits in 6 bits (with 0 standing for
+ * 64), and the meaningful bits, which then become the window</li>
+ * </ul>
+ * {@link #finish()} closes the series with a single 1 if it is empty, or else with 13 1s, a window of 31 leading 0s and 63
+ * bits that no value can describe. The reader stops there rather than at the end of the stream, so the series can be
+ * followed by other data or by a fixed-size writer's padding.
+ * <p>
+ * Floats are written widened to doubles. The widening is exact and leaves the low 29 bits of the XOR clear, so floats
+ * cost no more than their own precision needs. Read the values back with a {@link XorDoubleReader}.
+ *
+ * @author AireL
+ */
+public class XorDoubleWriter
+{
+	private static final int WORD_LENGTH = 64;
+	static final int LEADING_BITS = 5;
+	static final int LENGTH_BITS = 6;
+	private static final int MAX_LEADING = (1 << LEADING_BITS) - 1;
+
+	/**
+	 * The control bits and window that end a series
+	 */
+	static final int TERMINATOR_BITS = 2 + LEADING_BITS + LENGTH_BITS;
+	static final int TERMINATOR = (1 << TERMINATOR_BITS) - 1;
+
+	private final BitStreamWriter out;
+
+	/**
+	 * The bits of the last value written
+	 */
+	private long previous;
+
+	/**
+	 * Whether the first value has been written
+	 */
+	private boolean started = false;
+
+	/**
+	 * Whether the series has been closed
+	 */
+	private boolean finished = false;
+
+	/**
+	 * The window of meaningful bits last described, as counts of leading and trailing 0s. No window has been described
+	 * until the first value that differs from the one before.
+	 */
+	private int leading = Integer.MAX_VALUE;
+	private int trailing = Integer.MAX_VALUE;
+
+	/**
+	 * General constructor, encodes onto a writer
+	 * @param out	The writer to append values to
+	 */
+	public XorDoubleWriter(BitStreamWriter out)
+	{
+		this.out = out;
+	}
+
+	/**
+	 * Appends the next value of the series
+	 * @param value	The value to append
+	 */
+	public void append(double value)
+	{
+		if (this.finished) throw new IllegalStateException("Error, the series has already been finished");
+		long bits = Double.doubleToRawLongBits(value);
+		if (!this.started)
+		{
+			this.out.appendBit(false);
+			this.out.appendLong(bits, WORD_LENGTH);
+			this.previous = bits;
+			this.started = true;
+			return;
+		}
+		long xor = bits ^ this.previous;
+		this.previous = bits;
+		if (xor == 0L)
+		{
+			this.out.appendBit(false);
+			return;
+		}
+		int lead = Math.min(Long.numberOfLeadingZeros(xor), MAX_LEADING);
+		int trail = Long.numberOfTrailingZeros(xor);
+		if (lead >= this.leading && trail >= this.trailing)
+		{
+			int length = WORD_LENGTH - this.leading - this.trailing;
+			long meaningful = xor >>> this.trailing;
+			if (length <= WORD_LENGTH - 2)
+			{
+				this.out.appendLong((2L << length) | meaningful, length + 2);
+			}
+			else
+			{
+				this.out.appendInt(2, 2);
+				this.out.appendLong(meaningful, length);
+			}
+			return;
+		}
+		int length = WORD_LENGTH - lead - trail;
+		this.out.appendInt((3 << (LEADING_BITS + LENGTH_BITS)) | (lead << LENGTH_BITS) | (length & (WORD_LENGTH - 1)),
+				2 + LEADING_BITS + LENGTH_BITS);
+		this.out.appendLong(xor >>> trail, length);
+		this.leading = lead;
+		this.trailing = trail;
+	}
+
+	/**
+	 * Appends the next value of the series as a float
+	 * @param value	The value to append
+	 */
+	public void appendFloat(float value)
+	{
+		this.append((double) value);
+	}
+
+	/**
+	 * Closes the series, so that a reader knows where it ends. No more values can be appended afterwards.
+	 */
+	public void finish()
+	{
+		if (this.finished) throw new IllegalStateException("Error, the series has already been finished");
+		if (this.started)
+		{
+			this.out.appendInt(TERMINATOR, TERMINATOR_BITS);
+		}
+		else
+		{
+			this.out.appendBit(true);
+		}
+		this.finished = true;
+	}
+}
@@ -0,0 +1,31 @@
+package com.aire.fwk.raw.sys.bitstream;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for BitStreamWriter
+ *
+ * @author AireL
+ */
+public class BitStreamWriterTest
+{
+	/**
+	 * A writer sharing another writer's stream must not lose its bits when the first writer flushes the word it has
+	 * buffered
+	 */
+	@Test
+	public void sharedStreamKeepsOtherWritersBits()
+	{
+		BitStreamWriter w1 = new BitStreamWriter(128);
+		w1.appendInt(0xF, 4);
+		BitStreamWriter w2 = new BitStreamWriter(w1.getBitStream());
+		w2.setInt(0xF, 4, 20);
+		w1.appendInt(0xF, 4);
+		w1.flush();
+		BitStreamReader in = new BitStreamReader(w1.getBitStream());
+		assertEquals(0xFF, in.getInt(8, 0));
+		assertEquals(0xF, in.getInt(4, 20));
+	}
+}